@@ -0,0 +1,103 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.*;
+
+// Local database the benchmarks run against
+// Connects to a local mysqld, by default to the benchmarkDB schema on
+// localhost:3306 as root with no password. Override these with
+//  -Dbench.url=jdbc:mysql://host:port/schema -Dbench.user=... -Dbench.password=...
+// The employee and department tables in that schema are dropped and created
+// again for every trial, so use a schema that holds nothing else
+final class BenchmarkDatabase {
+
+    private static final PrintStream console = System.out;
+
+    // Rows sent to the server in one batch while populating the tables
+    private static final int POPULATE_BATCH = 10000;
+
+    private BenchmarkDatabase() {
+    }
+
+    static Connection connect() throws SQLException {
+        String separator = url().contains("?") ? "&" : "?";
+        return DriverManager.getConnection(url() + separator + "rewriteBatchedStatements=true", user(), password());
+    }
+
+    static String url() {
+        return System.getProperty("bench.url", "jdbc:mysql://localhost:3306/benchmarkDB");
+    }
+
+    static String user() {
+        return System.getProperty("bench.user", "root");
+    }
+
+    static String password() {
+        return System.getProperty("bench.password", "");
+    }
+
+    // The handlers print every result, which would dominate the measurements, so
+    // their output is thrown away while a trial runs
+    static void silenceHandlers() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    static void restoreConsole() {
+        System.setOut(console);
+    }
+
+    // Drops any tables left by an earlier run, and creates them the way main does
+    static void createTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("drop table if exists department");
+            stmt.executeUpdate("drop table if exists employee");
+        }
+        JDBCProjectBridge.setupTables(conn);
+    }
+
+    // Fills the tables with an org chart of orgSize employees about depth levels deep
+    // Employee Ei manages department Di, the employees of which are the next
+    // employees down the chart. E0 is at the top and manages the whole org
+    static void populate(Connection conn, int orgSize, int depth) throws SQLException {
+        populate(conn, OrgChart.ofDepth(orgSize, depth, 0, 0));
+    }
+
+    // Fills the tables with the given org chart, a batch of rows at a time
+    static void populate(Connection conn, OrgChart chart) throws SQLException {
+        try (PreparedStatement insertEmp = conn.prepareStatement("insert into employee values(?, ?, ?, ?)");
+             PreparedStatement insertDept = conn.prepareStatement("insert into department values(?, ?)")) {
+            for (int i = 0; i < chart.size; i++) {
+                insertEmp.setString(1, OrgChart.employee(i));
+                insertEmp.setString(2, chart.departmentOf(i));
+                insertEmp.setInt(3, chart.salaryOf(i));
+                insertEmp.setString(4, chart.cityOf(i));
+                insertEmp.addBatch();
+                if ((i + 1) % POPULATE_BATCH == 0) {
+                    insertEmp.executeBatch();
+                }
+            }
+            insertEmp.executeBatch();
+
+            // Every manager exists by now, as department.mname references them
+            for (int dept = 0; dept < chart.departments(); dept++) {
+                insertDept.setString(1, OrgChart.department(dept));
+                insertDept.setString(2, OrgChart.employee(chart.managerOf(dept)));
+                insertDept.addBatch();
+                if ((dept + 1) % POPULATE_BATCH == 0) {
+                    insertDept.executeBatch();
+                }
+            }
+            insertDept.executeBatch();
+        }
+    }
+
+    static void execute(Connection conn, String sql, String... parameters) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                stmt.setString(i + 1, parameters[i]);
+            }
+            stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// Throughput and latency of the read only lines, codes 5 and 6
+// Run for org charts of different sizes and depths, and for each way the
+// employees under a manager can be found
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HierarchyBenchmarks {
+
+    @Param({"1000", "10000"})
+    public int orgSize;
+
+    @Param({"3", "6"})
+    public int depth;
+
+    // Options the handlers run with, as they would be given to main
+    @Param({"--hierarchy=bfs", "--hierarchy=cte", "--org-graph=true"})
+    public String options;
+
+    Connection conn;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.silenceHandlers();
+        JDBCProjectBridge.configure(options.split(" "));
+        conn = BenchmarkDatabase.connect();
+        BenchmarkDatabase.createTables(conn);
+        BenchmarkDatabase.populate(conn, orgSize, depth);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        JDBCProjectBridge.dropAllTables(conn);
+        conn.close();
+        BenchmarkDatabase.restoreConsole();
+    }
+
+    // Every employee in the org is under E0
+    @Benchmark
+    public void listEmployeesUnderTop() {
+        JDBCProjectBridge.processLine(conn, "5 E0");
+    }
+
+    // E1 is one level down, and has about 1/fanout of the org under them
+    @Benchmark
+    public void listEmployeesUnderSecondLevel() {
+        JDBCProjectBridge.processLine(conn, "5 E1");
+    }
+
+    @Benchmark
+    public void listDepartments() {
+        JDBCProjectBridge.processLine(conn, "6 E1");
+    }
+}
@@ -0,0 +1,156 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.sql.Connection;
+
+import static java.lang.invoke.MethodType.methodType;
+
+// Calls into the JDBCProject classes from the benchmarks
+// JMH needs benchmarks to be in a named package, and a named package cannot
+// import the classes of the project, which are in the default package, so
+// the methods the benchmarks use are looked up once as MethodHandles instead
+final class JDBCProjectBridge {
+
+    private static final MethodHandle PARSE_OPTIONS;
+    private static final MethodHandle CONFIGURE;
+    private static final MethodHandle SETUP_TABLES;
+    private static final MethodHandle DROP_ALL_TABLES;
+    private static final MethodHandle PROCESS_LINE;
+    private static final MethodHandle NEW_READER;
+    private static final MethodHandle READER_NEXT;
+    private static final MethodHandle READER_CLOSE;
+    private static final MethodHandle NEW_LINE;
+    private static final MethodHandle FIELD_COUNT;
+    private static final MethodHandle FIELD;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> project = Class.forName("JDBCProject");
+            Class<?> options = Class.forName("RunOptions");
+            Class<?> reader = Class.forName("TransfileReader");
+            Class<?> line = Class.forName("TransfileLine");
+
+            PARSE_OPTIONS = lookup.findStatic(options, "parse", methodType(options, String[].class))
+                    .asType(methodType(Object.class, String[].class));
+            CONFIGURE = lookup.findStatic(project, "configure", methodType(void.class, options))
+                    .asType(methodType(void.class, Object.class));
+            SETUP_TABLES = lookup.findStatic(project, "setupTables", methodType(void.class, Connection.class));
+            DROP_ALL_TABLES = lookup.findStatic(project, "dropAllTables", methodType(void.class, Connection.class));
+            PROCESS_LINE = lookup.findStatic(project, "processLine",
+                    methodType(void.class, Connection.class, String.class));
+            NEW_READER = lookup.findConstructor(reader, methodType(void.class, String.class))
+                    .asType(methodType(Object.class, String.class));
+            READER_NEXT = lookup.findVirtual(reader, "next", methodType(boolean.class, line))
+                    .asType(methodType(boolean.class, Object.class, Object.class));
+            READER_CLOSE = lookup.findVirtual(reader, "close", methodType(void.class))
+                    .asType(methodType(void.class, Object.class));
+            NEW_LINE = lookup.findConstructor(line, methodType(void.class))
+                    .asType(methodType(Object.class));
+            FIELD_COUNT = lookup.findVirtual(line, "fieldCount", methodType(int.class))
+                    .asType(methodType(int.class, Object.class));
+            FIELD = lookup.findVirtual(line, "field", methodType(String.class, int.class))
+                    .asType(methodType(String.class, Object.class, int.class));
+        } catch (ReflectiveOperationException roe) {
+            throw new ExceptionInInitializerError(roe);
+        }
+    }
+
+    private JDBCProjectBridge() {
+    }
+
+    // Applies command line style options, such as --hierarchy=cte, to the handlers
+    static void configure(String... args) {
+        try {
+            CONFIGURE.invokeExact(PARSE_OPTIONS.invokeExact(args));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static void setupTables(Connection conn) {
+        try {
+            SETUP_TABLES.invokeExact(conn);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static void dropAllTables(Connection conn) {
+        try {
+            DROP_ALL_TABLES.invokeExact(conn);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    // Validates and runs one transfile line, exactly as main does
+    static void processLine(Connection conn, String line) {
+        try {
+            PROCESS_LINE.invokeExact(conn, line);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    // Returns a new TransfileReader for the given file
+    static Object openReader(String fileName) {
+        try {
+            return (Object) NEW_READER.invokeExact(fileName);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static boolean next(Object reader, Object line) {
+        try {
+            return (boolean) READER_NEXT.invokeExact(reader, line);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static void closeReader(Object reader) {
+        try {
+            READER_CLOSE.invokeExact(reader);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    // Returns a new, empty TransfileLine
+    static Object newLine() {
+        try {
+            return (Object) NEW_LINE.invokeExact();
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static int fieldCount(Object line) {
+        try {
+            return (int) FIELD_COUNT.invokeExact(line);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static String field(Object line, int index) {
+        try {
+            return (String) FIELD.invokeExact(line, index);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
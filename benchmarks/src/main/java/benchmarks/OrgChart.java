@@ -0,0 +1,135 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// The shape of a synthetic org chart of size employees
+// Employee Ei manages department Di, the employees of which are the next fanout
+// employees down the chart, taken in breadth first order, so the employees of Di
+// are E(1 + i * fanout) up to E(i * fanout + fanout). E0 is at the top
+// With a cycle rate, that share of the departments below the top are instead
+// managed by an employee under their own department (one to a few levels down), so
+// the hierarchy loops back on itself there. Which departments loop, and who manages
+// them, is worked out from the seed, so nothing is held in memory however large the
+// chart is, and the same options always give the same chart
+final class OrgChart {
+
+    // The department of E0 in a transfile, which has no row in department
+    // E0 has no department in the tables, which a transfile line cannot say
+    static final String TOP_DEPARTMENT = "Board";
+
+    private static final String[] CITIES = {"Chicago", "Boston", "Denver", "Austin", "Seattle", "Miami"};
+
+    final int size;
+    final int fanout;
+    final double cycleRate;
+    final long seed;
+
+    OrgChart(int size, int fanout, double cycleRate, long seed) {
+        this.size = size;
+        this.fanout = fanout;
+        this.cycleRate = cycleRate;
+        this.seed = seed;
+    }
+
+    // A chart about depth levels deep, as wide as that needs
+    static OrgChart ofDepth(int size, int depth, double cycleRate, long seed) {
+        return new OrgChart(size, Math.max(2, (int) Math.ceil(Math.pow(size, 1.0 / depth))), cycleRate, seed);
+    }
+
+    // Number of levels of the chart, counting E0 as the first
+    int depth() {
+        int levels = 1;
+        long below = 1;
+        for (long reached = 1; reached < size; levels++) {
+            below *= fanout;
+            reached += below;
+        }
+        return levels;
+    }
+
+    // Number of departments, one for every employee with someone under them
+    int departments() {
+        return (size - 1 + fanout - 1) / fanout;
+    }
+
+    static String employee(int i) {
+        return "E" + i;
+    }
+
+    static String department(int i) {
+        return "D" + i;
+    }
+
+    // The department employee i works in, or null for E0
+    String departmentOf(int i) {
+        return i == 0 ? null : department((i - 1) / fanout);
+    }
+
+    int salaryOf(int i) {
+        return i == 0 ? 100000 : 50000 + i % 1000;
+    }
+
+    String cityOf(int i) {
+        return CITIES[i % CITIES.length];
+    }
+
+    // The manager of department i, normally Ei, or someone under Ei if it loops
+    int managerOf(int dept) {
+        if (dept == 0 || cycleRate <= 0) {
+            return dept;
+        }
+        long hash = mix(seed + dept);
+        if ((hash >>> 11) * 0x1.0p-53 >= cycleRate) {
+            return dept;
+        }
+        // Walk down one to three levels, through a child picked from the hash each time
+        int manager = dept;
+        int levels = 1 + (int) ((hash >>> 3) & 3) % 3;
+        for (int level = 0; level < levels; level++) {
+            long child = 1 + (long) manager * fanout + ((hash >>> (8 * level + 16)) & 0xff) % fanout;
+            if (child >= size) {
+                break;
+            }
+            manager = (int) child;
+        }
+        return manager;
+    }
+
+    // Number of departments whose hierarchy loops back on itself
+    int cyclicDepartments() {
+        int cyclic = 0;
+        for (int dept = 0; dept < departments(); dept++) {
+            if (managerOf(dept) != dept) {
+                cyclic++;
+            }
+        }
+        return cyclic;
+    }
+
+    // Writes the chart as a transfile that builds it, every employee with a code 2
+    // line, then every department with a code 4 line, since their managers must exist
+    void writeTransfile(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < size; i++) {
+                String dept_name = departmentOf(i);
+                out.write("2 " + employee(i) + " " + (dept_name == null ? TOP_DEPARTMENT : dept_name) + " "
+                        + salaryOf(i) + " " + cityOf(i));
+                out.newLine();
+            }
+            for (int dept = 0; dept < departments(); dept++) {
+                out.write("4 " + department(dept) + " " + employee(managerOf(dept)));
+                out.newLine();
+            }
+        }
+    }
+
+    // Helper to spread the bits of a number, so nearby departments get unrelated hashes
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,89 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+// Time to read and split every line of a transfile, without running any of them
+// Compares the TransfileReader used by main with the Scanner and split(" ") it
+// replaced. Needs no database
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmarks {
+
+    @Param({"100000", "1000000"})
+    public int lines;
+
+    Path transfile;
+
+    // Writes a transfile with a mix of every transaction code
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        transfile = Files.createTempFile("transfile", ".txt");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(transfile))) {
+            for (int i = 0; i < lines; i++) {
+                switch (i % 6) {
+                    case 0:
+                        out.println("2 E" + i + " D" + (i % 100) + " " + (50000 + i % 1000) + " Chicago");
+                        break;
+                    case 1:
+                        out.println("4 D" + (i % 100) + " E" + (i - 1));
+                        break;
+                    case 2:
+                        out.println("5 E" + (i % 100));
+                        break;
+                    case 3:
+                        out.println("6 E" + (i % 100));
+                        break;
+                    case 4:
+                        out.println("1 E" + (i - 4));
+                        break;
+                    default:
+                        out.println("3 D" + (i % 100));
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(transfile);
+    }
+
+    @Benchmark
+    public void transfileReader(Blackhole blackhole) {
+        Object reader = JDBCProjectBridge.openReader(transfile.toString());
+        try {
+            Object line = JDBCProjectBridge.newLine();
+            while (JDBCProjectBridge.next(reader, line)) {
+                int fieldCount = JDBCProjectBridge.fieldCount(line);
+                blackhole.consume(fieldCount);
+                blackhole.consume(JDBCProjectBridge.field(line, fieldCount - 1));
+            }
+        } finally {
+            JDBCProjectBridge.closeReader(reader);
+        }
+    }
+
+    @Benchmark
+    public void scannerAndSplit(Blackhole blackhole) throws IOException {
+        try (Scanner in = new Scanner(new FileReader(transfile.toFile()))) {
+            while (in.hasNextLine()) {
+                String[] stringArgs = in.nextLine().split(" ");
+                blackhole.consume(stringArgs.length);
+                blackhole.consume(stringArgs[stringArgs.length - 1]);
+            }
+        }
+    }
+}
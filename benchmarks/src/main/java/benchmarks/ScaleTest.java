@@ -0,0 +1,176 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs JDBCProject end to end against a synthetic org chart, to see how it scales
+//  1. generates an org chart (OrgChart) of the given size, fanout or depth and cycle
+//     rate, written as org.txt, a transfile that builds it, and a workload
+//     (Workload) of lines against it with the given mix of codes, as workload.txt
+//  2. fills the tables of the benchmark database with the org chart, in batches
+//  3. runs JDBCProject on workload.txt in its own JVM, the same as from the command
+//     line, with any --app options passed on to it, and reports the lines per second
+// Options are of the form --name=value, the same as for JDBCProject:
+//  --employees=N     size of the org chart, 10000 by default
+//  --depth=N         levels of the org chart, 4 by default, or
+//  --fanout=N        employees in each department, which then sets the depth
+//  --cycle-rate=R    share of departments managed from under themselves, 0 to 1
+//  --lines=N         lines of the workload, 100000 by default
+//  --mix=...         weights of the codes, by default Workload.DEFAULT_MIX
+//  --seed=N          seed both files are generated from
+//  --dir=PATH        folder the files and results are written to, "scale" by default
+//  --run=false       only generates the files
+//  --app=OPTION      passed on to JDBCProject, such as --app=--hierarchy=cte
+//  --min-lines-per-second=N  fails (exit code 1) if the workload runs slower
+// The database is the one the benchmarks use, see BenchmarkDatabase
+public class ScaleTest {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int employees = 10000;
+        int depth = 4;
+        int fanout = 0;
+        double cycleRate = 0;
+        long lines = 100000;
+        String mix = Workload.DEFAULT_MIX;
+        long seed = 1;
+        Path dir = Paths.get("scale");
+        boolean run = true;
+        List<String> appOptions = new ArrayList<>();
+        double minLinesPerSecond = 0;
+
+        for (String arg : args) {
+            int equalsIndex = arg.indexOf('=');
+            if (!arg.startsWith("--") || equalsIndex < 0) {
+                fail("Options should be of the form --name=value: " + arg);
+            }
+            String name = arg.substring(2, equalsIndex);
+            String value = arg.substring(equalsIndex + 1);
+            switch (name) {
+                case "employees":
+                    employees = Integer.parseInt(value);
+                    break;
+                case "depth":
+                    depth = Integer.parseInt(value);
+                    break;
+                case "fanout":
+                    fanout = Integer.parseInt(value);
+                    break;
+                case "cycle-rate":
+                    cycleRate = Double.parseDouble(value);
+                    break;
+                case "lines":
+                    lines = Long.parseLong(value);
+                    break;
+                case "mix":
+                    mix = value;
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "dir":
+                    dir = Paths.get(value);
+                    break;
+                case "run":
+                    run = Boolean.parseBoolean(value);
+                    break;
+                case "app":
+                    appOptions.add(value);
+                    break;
+                case "min-lines-per-second":
+                    minLinesPerSecond = Double.parseDouble(value);
+                    break;
+                default:
+                    fail("Unknown option: " + arg);
+            }
+        }
+        if (employees < 1 || depth < 1 || fanout < 0 || fanout == 1 || cycleRate < 0 || cycleRate > 1 || lines < 0) {
+            fail("--employees and --depth must be at least 1, --fanout at least 2, --cycle-rate from 0 to 1");
+        }
+
+        OrgChart chart = fanout > 0 ? new OrgChart(employees, fanout, cycleRate, seed)
+                : OrgChart.ofDepth(employees, depth, cycleRate, seed);
+        System.out.printf("Org chart: %d employees, %d departments, fanout %d, %d levels, %d departments " +
+                        "looping back on themselves%n", chart.size, chart.departments(), chart.fanout, chart.depth(),
+                chart.cyclicDepartments());
+
+        // Generate both files
+        Files.createDirectories(dir);
+        Path org = dir.resolve("org.txt");
+        Path workload = dir.resolve("workload.txt");
+        long start = System.nanoTime();
+        chart.writeTransfile(org);
+        Workload.parse(mix).write(chart, lines, seed, workload);
+        System.out.printf("Wrote %s and %s (%d lines, mix %s) in %.1f s%n", org, workload, lines, mix,
+                seconds(start));
+        if (!run) {
+            return;
+        }
+
+        // Fill the tables, JDBCProject uses the tables it finds
+        start = System.nanoTime();
+        try (Connection conn = BenchmarkDatabase.connect()) {
+            BenchmarkDatabase.createTables(conn);
+            BenchmarkDatabase.populate(conn, chart);
+        } catch (SQLException sqle) {
+            fail("Exception: " + sqle + "\nCould not fill the tables of " + BenchmarkDatabase.url());
+        }
+        double seedSeconds = seconds(start);
+        long rows = (long) chart.size + chart.departments();
+        System.out.printf("Filled the tables with %d rows in %.1f s, %.0f rows/s%n", rows, seedSeconds,
+                rows / seedSeconds);
+
+        // Run the workload the way it is run from the command line, in a JVM of its own
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("JDBCProject");
+        command.add("--primary=" + BenchmarkDatabase.url());
+        command.add("--transfile=" + workload);
+        command.add("--output-file=" + dir.resolve("results.txt"));
+        command.add("--metrics=true");
+        command.addAll(appOptions);
+        System.out.println("Running " + String.join(" ", command.subList(3, command.size())));
+
+        start = System.nanoTime();
+        // The credentials go in the environment of the child, where other users cannot
+        // read them the way they can its command line. They replace any inherited from
+        // this JVM, and come before any a jdbcproject.properties file would give
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectInput(ProcessBuilder.Redirect.INHERIT)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+        builder.environment().put("JDBCPROJECT_USER", BenchmarkDatabase.user());
+        builder.environment().put("JDBCPROJECT_PASSWORD", BenchmarkDatabase.password());
+        Process app = builder.start();
+        int exitCode = app.waitFor();
+        double runSeconds = seconds(start);
+        if (exitCode != 0) {
+            fail("JDBCProject exited with " + exitCode + ", see above and " + dir.resolve("results.txt"));
+        }
+
+        // Includes starting the JVM and checking the schema, which is small next to
+        // a workload of any size worth measuring
+        double linesPerSecond = lines / runSeconds;
+        System.out.printf("Ran %d lines against %d employees in %.1f s, %.0f lines/s%n", lines, chart.size,
+                runSeconds, linesPerSecond);
+        if (linesPerSecond < minLinesPerSecond) {
+            fail(String.format("Slower than --min-lines-per-second=%.0f", minLinesPerSecond));
+        }
+    }
+
+    private static double seconds(long start) {
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private static void fail(String message) {
+        System.out.println(message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,144 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+// A transfile of lines to run against an OrgChart, with the transaction codes mixed
+// in the given proportions, written as a mix such as "1:10,2:30,5:20,error:5"
+// (weights, not percentages). The lines refer to the employees and departments of
+// the chart, plus the new ones earlier lines add, so most of them find what they
+// look for, and some do not, the same as a real transfile:
+//  - code 1 deletes an employee of the chart, or one added earlier by a code 2 line
+//  - code 2 adds a new employee to a department of the chart, and now and then
+//    repeats a name that already exists
+//  - code 3 deletes a department of the chart
+//  - code 4 replaces a department of the chart, or adds a new one, managed by an
+//    employee of the chart
+//  - code 5 and 6 look up a manager of the chart, or now and then an employee
+//    who manages nothing
+//  - error lines are malformed, in each of the ways LineValidator rejects
+final class Workload {
+
+    static final String DEFAULT_MIX = "1:10,2:30,3:5,4:10,5:20,6:20,error:5";
+
+    private static final String[] CITIES = {"Chicago", "Boston", "Denver", "Austin", "Seattle", "Miami"};
+    private static final String[] MALFORMED = {
+            "",
+            "x E1",
+            "9 E1",
+            "1",
+            "1 E1 extra",
+            "2 Emp D0 50000",
+            "2 Emp D0 fifty Chicago",
+            "3",
+            "4 D0",
+            "5 E0 E1",
+            "6",
+    };
+
+    // Weight of each transaction code 1-6, with the weight of malformed lines at 0
+    private final int[] weights = new int[7];
+    private final int totalWeight;
+
+    private Workload(String mix) {
+        for (String part : mix.split(",")) {
+            String[] codeAndWeight = part.trim().split(":");
+            if (codeAndWeight.length != 2) {
+                throw new IllegalArgumentException("mix must be a list of code:weight, such as " + DEFAULT_MIX);
+            }
+            int code = codeAndWeight[0].equals("error") ? 0 : Integer.parseInt(codeAndWeight[0]);
+            if (code < 0 || code > 6) {
+                throw new IllegalArgumentException("mix codes must be 1-6 or error");
+            }
+            weights[code] = Integer.parseInt(codeAndWeight[1]);
+        }
+        int total = 0;
+        for (int weight : weights) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("mix weights must not be negative");
+            }
+            total += weight;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("mix must give at least one code a weight");
+        }
+        this.totalWeight = total;
+    }
+
+    static Workload parse(String mix) {
+        return new Workload(mix);
+    }
+
+    // Writes lines lines against chart to file, picked from the given seed
+    void write(OrgChart chart, long lines, long seed, Path file) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        long addedEmployees = 0;
+        long addedDepartments = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            for (long line = 0; line < lines; line++) {
+                String text;
+                switch (pickCode(random)) {
+                    case 1:
+                        text = "1 " + (addedEmployees > 0 && random.nextInt(5) == 0
+                                ? "N" + random.nextLong(addedEmployees) : anyEmployee(chart, random));
+                        break;
+                    case 2:
+                        String ename = random.nextInt(20) == 0 ? anyEmployee(chart, random) : "N" + addedEmployees++;
+                        text = "2 " + ename + " " + anyDepartment(chart, random) + " "
+                                + (30000 + random.nextInt(120000)) + " " + CITIES[random.nextInt(CITIES.length)];
+                        break;
+                    case 3:
+                        text = "3 " + anyDepartment(chart, random);
+                        break;
+                    case 4:
+                        String dept_name = random.nextBoolean() ? anyDepartment(chart, random)
+                                : "ND" + addedDepartments++;
+                        text = "4 " + dept_name + " " + anyEmployee(chart, random);
+                        break;
+                    case 5:
+                        text = "5 " + anyManager(chart, random);
+                        break;
+                    case 6:
+                        text = "6 " + anyManager(chart, random);
+                        break;
+                    default:
+                        text = MALFORMED[random.nextInt(MALFORMED.length)];
+                }
+                out.write(text);
+                out.newLine();
+            }
+        }
+    }
+
+    // Helper to pick the code of the next line, 0 for a malformed line
+    private int pickCode(SplittableRandom random) {
+        int pick = random.nextInt(totalWeight);
+        for (int code = 0; code < weights.length; code++) {
+            pick -= weights[code];
+            if (pick < 0) {
+                return code;
+            }
+        }
+        throw new IllegalStateException("weights do not add up");
+    }
+
+    private static String anyEmployee(OrgChart chart, SplittableRandom random) {
+        return OrgChart.employee(random.nextInt(chart.size));
+    }
+
+    private static String anyDepartment(OrgChart chart, SplittableRandom random) {
+        return OrgChart.department(random.nextInt(Math.max(1, chart.departments())));
+    }
+
+    // Helper to pick an employee who manages a department of the chart, or one in
+    // ten times anyone at all
+    private static String anyManager(OrgChart chart, SplittableRandom random) {
+        if (chart.departments() == 0 || random.nextInt(10) == 0) {
+            return anyEmployee(chart, random);
+        }
+        return OrgChart.employee(random.nextInt(chart.departments()));
+    }
+}
@@ -0,0 +1,124 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// Throughput and latency of the lines that change the tables, codes 1-4
+// Each line runs through JDBCProject.processLine, the same as a transfile line,
+// against an org chart of orgSize employees. Rows a benchmark needs (or leaves
+// behind) are set up and cleaned away outside the measured call
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmarks {
+
+    @Param({"1000", "10000"})
+    public int orgSize;
+
+    // Options the handlers run with, as they would be given to main
+    @Param({"", "--single-statement=true"})
+    public String options;
+
+    Connection conn;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.silenceHandlers();
+        JDBCProjectBridge.configure(options.isEmpty() ? new String[0] : options.split(" "));
+        conn = BenchmarkDatabase.connect();
+        BenchmarkDatabase.createTables(conn);
+        BenchmarkDatabase.populate(conn, orgSize, 4);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        JDBCProjectBridge.dropAllTables(conn);
+        conn.close();
+        BenchmarkDatabase.restoreConsole();
+    }
+
+    // A name that is not in the employee table yet, removed again after the call
+    @State(Scope.Thread)
+    public static class NewEmployee {
+        int counter = 0;
+        String line;
+        String ename;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            ename = "New" + counter++;
+            line = "2 " + ename + " D0 100000 Chicago";
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown(WriteBenchmarks db) throws SQLException {
+            BenchmarkDatabase.execute(db.conn, "delete from employee where ename = ?", ename);
+        }
+    }
+
+    // An employee inserted before the call, for the call to delete
+    @State(Scope.Thread)
+    public static class DoomedEmployee {
+        int counter = 0;
+        String line;
+
+        @Setup(Level.Invocation)
+        public void setUp(WriteBenchmarks db) throws SQLException {
+            String ename = "Doomed" + counter++;
+            BenchmarkDatabase.execute(db.conn, "insert into employee values(?, 'D0', 100000, 'Chicago')", ename);
+            line = "1 " + ename;
+        }
+    }
+
+    // A department inserted before the call, for the call to delete
+    @State(Scope.Thread)
+    public static class DoomedDepartment {
+        int counter = 0;
+        String line;
+
+        @Setup(Level.Invocation)
+        public void setUp(WriteBenchmarks db) throws SQLException {
+            String dept_name = "Doomed" + counter++;
+            BenchmarkDatabase.execute(db.conn, "insert into department values(?, 'E0')", dept_name);
+            line = "3 " + dept_name;
+        }
+    }
+
+    @Benchmark
+    public void deleteEmployee(DoomedEmployee employee) {
+        JDBCProjectBridge.processLine(conn, employee.line);
+    }
+
+    @Benchmark
+    public void deleteEmployeeNotFound() {
+        JDBCProjectBridge.processLine(conn, "1 Nobody");
+    }
+
+    @Benchmark
+    public void insertEmployee(NewEmployee employee) {
+        JDBCProjectBridge.processLine(conn, employee.line);
+    }
+
+    @Benchmark
+    public void insertEmployeeDuplicate() {
+        JDBCProjectBridge.processLine(conn, "2 E1 D0 100000 Chicago");
+    }
+
+    @Benchmark
+    public void deleteDepartment(DoomedDepartment department) {
+        JDBCProjectBridge.processLine(conn, department.line);
+    }
+
+    // Replaces department D1 with one of the same name and manager, which takes
+    // the "department already exists" path every time
+    @Benchmark
+    public void insertDepartment() {
+        JDBCProjectBridge.processLine(conn, "4 D1 E1");
+    }
+}
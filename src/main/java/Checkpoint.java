@@ -0,0 +1,187 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.util.zip.CRC32;
+
+// How far through one transfile a checkpointed run has got
+// The position is the next line to process, as a line number and a byte offset
+// in the file, and is saved to the transfile_checkpoint table by the
+// TransactionGroup in the same transaction as the lines before it. So after a
+// crash, the saved position always matches the data that was committed, and the
+// next run continues from exactly that line
+// The position is saved under the absolute path of the file, with a fingerprint of
+// the part of the file before it. If the file at that path no longer starts with
+// the same bytes, such as a transfile generated again under the same name, the
+// checkpoint belongs to another file, and the file is run from the start
+public class Checkpoint {
+
+    static final String CREATE_TABLE_SQL = "CREATE TABLE IF NOT EXISTS transfile_checkpoint (\n" +
+            "file_name varchar(700),\n" +
+            "next_line bigint,\n" +
+            "next_offset bigint,\n" +
+            "finished boolean,\n" +
+            "fingerprint bigint,\n" +
+            "PRIMARY KEY (file_name)\n" +
+            ");";
+    // Brings a table made before the fingerprint was saved up to date
+    static final String ADD_FINGERPRINT_SQL = "ALTER TABLE transfile_checkpoint MODIFY file_name varchar(700), " +
+            "ADD COLUMN fingerprint bigint";
+    private static final String SELECT_SQL = "select next_line, next_offset, finished, fingerprint " +
+            "from transfile_checkpoint where file_name = ?";
+    private static final String SAVE_SQL = "insert into transfile_checkpoint " +
+            "(file_name, next_line, next_offset, finished, fingerprint) values(?, ?, ?, ?, ?) " +
+            "on duplicate key update next_line = values(next_line), next_offset = values(next_offset), " +
+            "finished = values(finished), fingerprint = values(fingerprint)";
+
+    // Bytes at the start of the file, and just before the saved offset, that the
+    // fingerprint is taken over
+    private static final int HEAD_BYTES = 64 * 1024;
+    private static final int TAIL_BYTES = 4 * 1024;
+
+    private final Path file;
+    private final String fileName;
+    private long nextLine = 1;
+    private long nextOffset = 0;
+    private boolean finished = false;
+    // The line after the last one seen, where the run continues once every
+    // pending line has been applied
+    private long seenLine = 1;
+    private long seenOffset = 0;
+    // Whether the file is being followed, and so is never finished
+    private boolean followed = false;
+    // Whether a position was saved for this path, but for a file with other contents
+    private boolean changed = false;
+
+    private Checkpoint(Path file) {
+        this.file = file;
+        this.fileName = file.toAbsolutePath().normalize().toString();
+    }
+
+    // Reads the saved position of the given transfile, or the start of the file if
+    // it has none yet, or if the position was saved for a different file
+    public static Checkpoint load(Connection conn, Path file) throws SQLException, IOException {
+        Checkpoint checkpoint = new Checkpoint(file);
+        try (PreparedStatement select = conn.prepareStatement(SELECT_SQL)) {
+            select.setString(1, checkpoint.fileName);
+            ResultSet rs = select.executeQuery();
+            if (!rs.next()) {
+                return checkpoint;
+            }
+            long nextOffset = rs.getLong(2);
+            long savedFingerprint = rs.getLong(4);
+            if (rs.wasNull() || savedFingerprint != checkpoint.fingerprint(nextOffset)) {
+                checkpoint.changed = true;
+                return checkpoint;
+            }
+            checkpoint.nextLine = rs.getLong(1);
+            checkpoint.nextOffset = nextOffset;
+            checkpoint.finished = rs.getBoolean(3);
+            checkpoint.seenLine = checkpoint.nextLine;
+            checkpoint.seenOffset = checkpoint.nextOffset;
+        }
+        return checkpoint;
+    }
+
+    // Called once every change made by line is part of the current transaction
+    public void linePassed(TransfileLine line) {
+        nextLine = line.number() + 1;
+        nextOffset = line.nextOffset();
+        seenLine = nextLine;
+        seenOffset = nextOffset;
+    }
+
+    // Called after line with the first line that is still waiting in a batch, which
+    // is where a resumed run would have to start again
+    public void linePending(TransfileLine pending, TransfileLine line) {
+        nextLine = pending.number();
+        nextOffset = pending.offset();
+        seenLine = line.number() + 1;
+        seenOffset = line.nextOffset();
+    }
+
+    // Called once every pending line has been applied, moving the position past
+    // the last line seen
+    public void pendingDone() {
+        nextLine = seenLine;
+        nextOffset = seenOffset;
+    }
+
+    // Marks the file as followed by --follow, so it is never saved as finished
+    // and the next run carries on following it
+    public void followed() {
+        followed = true;
+    }
+
+    // Called once the last line of the file has been processed
+    public void fileFinished() {
+        finished = !followed;
+    }
+
+    // Writes the position as part of the current transaction
+    public void save(Connection conn) throws SQLException {
+        long fingerprint;
+        try {
+            fingerprint = fingerprint(nextOffset);
+        } catch (IOException ioe) {
+            throw new SQLException("Could not read " + file + " to save its checkpoint", ioe);
+        }
+        PreparedStatement save = StatementCache.prepare(conn, SAVE_SQL);
+        save.setString(1, fileName);
+        save.setLong(2, nextLine);
+        save.setLong(3, nextOffset);
+        save.setBoolean(4, finished);
+        save.setLong(5, fingerprint);
+        save.executeUpdate();
+    }
+
+    // Helper to fingerprint the first offset bytes of the file, from the CRC32 of
+    // the first HEAD_BYTES of them and of the last TAIL_BYTES before offset
+    // Returns -1 if the file is shorter than offset
+    private long fingerprint(long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < offset) {
+                return -1;
+            }
+            long headEnd = Math.min(offset, HEAD_BYTES);
+            long tailStart = Math.max(headEnd, offset - TAIL_BYTES);
+            return crc(channel, 0, headEnd) << 32 | crc(channel, tailStart, offset);
+        }
+    }
+
+    // Helper to find the CRC32 of the bytes from start up to end, which are in the file
+    private static long crc(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("The file got shorter while it was being read");
+            }
+        }
+        buffer.flip();
+        CRC32 crc = new CRC32();
+        crc.update(buffer);
+        return crc.getValue();
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getNextLine() {
+        return nextLine;
+    }
+
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public boolean isChanged() {
+        return changed;
+    }
+}
@@ -0,0 +1,56 @@
+import java.text.Normalizer;
+import java.util.Locale;
+
+// How names are compared on the client, to match how MySQL compares the ename and
+// dept_name primary keys under the default collation (utf8mb4_0900_ai_ci), which
+// ignores case and accents, so "Mary", "mary" and "Mary" with an accent are one name
+// The full collation is not reproduced here, only what names need:
+//  - plain ASCII names, nearly all of them, fold exactly, by lowercasing them
+//  - other names are decomposed, their accents dropped, and the letters the
+//    collation reads as other letters spelled out (the German sharp s as "ss", the
+//    ae ligature as "ae", and so on), which covers the Latin letters names are
+//    written with, but not every character the collation knows, so two such names
+//    can fold differently and still be equal in MySQL
+// Anything that must never disagree with MySQL, like the "definitely absent"
+// answers of ExistenceCache, should only trust the fold of a name when isExact
+public class Collation {
+
+    // Lowercase letters that neither decompose nor lose their accent, and what the
+    // collation reads them as
+    private static final String[][] EXPANSIONS = {
+            {"\u00df", "ss"},
+            {"\u00e6", "ae"},
+            {"\u0153", "oe"},
+            {"\u00f8", "o"},
+            {"\u0111", "d"},
+            {"\u0142", "l"},
+            {"\u0127", "h"},
+            {"\u0131", "i"},
+            {"\u03c2", "\u03c3"},
+    };
+
+    // Folds a name so that names MySQL treats as the same primary key fold the same
+    public static String fold(String name) {
+        if (isExact(name)) {
+            return name.toLowerCase(Locale.ROOT);
+        }
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFKD).replaceAll("[\\u0300-\\u036f]", "");
+        String folded = decomposed.toLowerCase(Locale.ROOT);
+        for (String[] expansion : EXPANSIONS) {
+            folded = folded.replace(expansion[0], expansion[1]);
+        }
+        return folded;
+    }
+
+    // Checks if the fold of name is known to be exact, which is when it is printable
+    // ASCII: two such names are equal in MySQL exactly when they fold the same
+    public static boolean isExact(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c <= 0x20 || c >= 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,232 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// A transfile compiled into a compact binary form, for transfiles that are run
+// again and again. --compile checks every line once and writes it as:
+//  - one opcode byte per line, the transaction code for a valid line of codes 1-6
+//  - the names, departments, and cities as numbers into a dictionary, where each
+//    distinct string is defined once, just before the first line that uses it
+//  - the salary as a zigzag varint, or as a string from the dictionary if it is
+//    written in a way the number would not print back the same (such as "0100")
+//  - a malformed line as the code and message it is rejected with
+// Replaying the compiled file reads each line back as its code and already decoded
+// Strings, so none of the scanning, splitting, or checking is done again
+// The file starts with MAGIC, which is how a compiled transfile is told apart from
+// a text one
+public class CompiledTransfile {
+
+    static final byte[] MAGIC = {'T', 'F', 'C', '1'};
+
+    // Opcodes besides the transaction codes 1-6
+    private static final int DEFINE = 0;
+    private static final int INSERT_WITH_TEXT_SALARY = 7;
+    private static final int INVALID = 8;
+
+    // One line of a compiled transfile, reused for every line read
+    public static class Line {
+        long number;
+        // Transaction code of the line, or 0 if it did not have a valid one
+        int code;
+        // The arguments of the line, in the order of its fields
+        final String[] args = new String[4];
+        // The message the line is rejected with, or null if it is well formed
+        String problem;
+
+        public long number() {
+            return number;
+        }
+
+        public int code() {
+            return code;
+        }
+
+        // The line as it was written in the transfile, for a well formed line
+        @Override
+        public String toString() {
+            if (problem != null) {
+                return problem;
+            }
+            StringBuilder text = new StringBuilder().append(code);
+            for (int i = 0; i < argumentCount(code); i++) {
+                text.append(' ').append(args[i]);
+            }
+            return text.toString();
+        }
+    }
+
+    // Checks if the file starts with MAGIC
+    public static boolean isCompiled(Path path) throws IOException {
+        if (Files.isDirectory(path) || Files.size(path) < MAGIC.length) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        }
+    }
+
+    // Compiles the text transfile in into out
+    // Returns a summary of what was written
+    public static String compile(Path in, Path out) throws IOException {
+        long lines = 0;
+        long invalid = 0;
+        Map<String, Integer> dictionary = new HashMap<>();
+        try (TransfileReader reader = new TransfileReader(in.toString());
+             DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(out),
+                     TransfileReader.DEFAULT_BUFFER_SIZE))) {
+            writer.write(MAGIC);
+            TransfileLine line = new TransfileLine();
+            while (reader.next(line)) {
+                lines++;
+                int transcode = LineValidator.transcodeOf(line);
+                String problem = transcode == 2 ? LineValidator.argumentProblem(line, 2)
+                        : LineValidator.problemWith(line);
+                if (problem != null) {
+                    invalid++;
+                    int message = define(writer, dictionary, problem);
+                    writer.writeByte(INVALID);
+                    writer.writeByte(transcode);
+                    writeVarint(writer, message);
+                    continue;
+                }
+
+                // Define every new string before the opcode, so the arguments follow it
+                int[] ids = new int[argumentCount(transcode)];
+                String salary = transcode == 2 ? line.field(3) : null;
+                boolean textSalary = salary != null && !salary.equals(Integer.toString(Integer.parseInt(salary)));
+                for (int i = 0; i < ids.length; i++) {
+                    if (i != 2 || transcode != 2 || textSalary) {
+                        ids[i] = define(writer, dictionary, line.field(i + 1));
+                    }
+                }
+                writer.writeByte(textSalary ? INSERT_WITH_TEXT_SALARY : transcode);
+                for (int i = 0; i < ids.length; i++) {
+                    if (i == 2 && transcode == 2 && !textSalary) {
+                        writeVarint(writer, zigzag(Integer.parseInt(salary)));
+                    } else {
+                        writeVarint(writer, ids[i]);
+                    }
+                }
+            }
+        }
+        long inBytes = Files.size(in);
+        long outBytes = Files.size(out);
+        return String.format("Compiled %d lines (%d malformed) of %s into %s, %d distinct strings, %d bytes " +
+                "to %d (%.0f%% of the size)", lines, invalid, in, out, dictionary.size(), inBytes, outBytes,
+                inBytes == 0 ? 100.0 : 100.0 * outBytes / inBytes);
+    }
+
+    // Reads the lines of a compiled transfile back
+    public static class Reader implements AutoCloseable {
+
+        private final DataInputStream in;
+        private final List<String> dictionary = new ArrayList<>();
+        private long lineNumber = 0;
+
+        public Reader(Path path) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path),
+                    TransfileReader.DEFAULT_BUFFER_SIZE));
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                in.close();
+                throw new IOException(path + " is not a compiled transfile");
+            }
+        }
+
+        // Reads the next line into line, returning false once there are no more lines
+        public boolean next(Line line) throws IOException {
+            int opcode = in.read();
+            while (opcode == DEFINE) {
+                byte[] bytes = new byte[readVarint(in)];
+                in.readFully(bytes);
+                dictionary.add(new String(bytes, StandardCharsets.UTF_8));
+                opcode = in.read();
+            }
+            if (opcode < 0) {
+                return false;
+            }
+            line.number = ++lineNumber;
+            line.problem = null;
+            if (opcode == INVALID) {
+                line.code = in.readUnsignedByte();
+                line.problem = dictionary.get(readVarint(in));
+                return true;
+            }
+            line.code = opcode == INSERT_WITH_TEXT_SALARY ? 2 : opcode;
+            for (int i = 0; i < argumentCount(line.code); i++) {
+                if (i == 2 && opcode == 2) {
+                    line.args[i] = Integer.toString(unzigzag(readVarint(in)));
+                } else {
+                    line.args[i] = dictionary.get(readVarint(in));
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // Helper to find the dictionary number of a string, writing its definition the
+    // first time it is seen
+    private static int define(DataOutputStream writer, Map<String, Integer> dictionary, String value)
+            throws IOException {
+        Integer id = dictionary.get(value);
+        if (id != null) {
+            return id;
+        }
+        id = dictionary.size();
+        dictionary.put(value, id);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writer.writeByte(DEFINE);
+        writeVarint(writer, bytes.length);
+        writer.write(bytes);
+        return id;
+    }
+
+    // Number of arguments a line of each transaction code has
+    private static int argumentCount(int transcode) {
+        switch (transcode) {
+            case 2:
+                return 4;
+            case 4:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    // Helper to write a non-negative number 7 bits at a time, lowest bits first
+    private static void writeVarint(DataOutputStream writer, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            writer.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        writer.writeByte(value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int next = in.readUnsignedByte();
+            value |= (next & 0x7f) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    // Helpers to map negative salaries to small non-negative numbers and back
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,125 @@
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// A fixed size pool of connections to the database
+// Every connection is opened up front, and borrow blocks until one is free,
+// so no more than size MySQL sessions are ever used by the pool
+public class ConnectionPool implements AutoCloseable {
+
+    private final List<Connection> connections = new ArrayList<>();
+    private final BlockingQueue<Connection> idle;
+
+    // Opens size connections with the given connection string and credentials
+    // If any of them fails to open, the ones already opened are closed again
+    public ConnectionPool(String connectionString, String userid, String passwd, int size) throws SQLException {
+        this(Collections.singletonList(connectionString), userid, passwd, size);
+    }
+
+    // Opens sizePerTarget connections to each of the given connection strings
+    // The connections are handed out in turn from each target, so borrowers spread
+    // evenly over them. They are all opened at the same time, since opening one is
+    // mostly waiting on the server
+    public ConnectionPool(List<String> connectionStrings, String userid, String passwd, int sizePerTarget)
+            throws SQLException {
+        idle = new ArrayBlockingQueue<>(connectionStrings.size() * sizePerTarget);
+        List<Callable<Connection>> opening = new ArrayList<>();
+        for (int i = 0; i < sizePerTarget; i++) {
+            for (String connectionString : connectionStrings) {
+                opening.add(() -> DriverManager.getConnection(connectionString, userid, passwd));
+            }
+        }
+        SQLException failure = null;
+        for (Future<Connection> opened : inParallel(opening)) {
+            try {
+                Connection conn = result(opened);
+                connections.add(conn);
+                idle.add(conn);
+            } catch (SQLException sqle) {
+                failure = sqle;
+            }
+        }
+        if (failure != null) {
+            close();
+            throw failure;
+        }
+    }
+
+    // Prepares the given statements on every connection of the pool, all at once
+    public void warm(List<String> sqls) throws SQLException {
+        List<Callable<Connection>> warming = new ArrayList<>();
+        for (Connection conn : connections) {
+            warming.add(() -> {
+                StatementCache.warm(conn, sqls);
+                return conn;
+            });
+        }
+        for (Future<Connection> warmed : inParallel(warming)) {
+            result(warmed);
+        }
+    }
+
+    // Number of connections in the pool
+    public int size() {
+        return connections.size();
+    }
+
+    // Takes a free connection from the pool, waiting for one if they are all in use
+    public Connection borrow() {
+        try {
+            return idle.take();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a database connection", ie);
+        }
+    }
+
+    // Returns a borrowed connection to the pool
+    public void release(Connection conn) {
+        idle.add(conn);
+    }
+
+    // Helper to run every task on a thread of its own, and wait for all of them
+    private static List<Future<Connection>> inParallel(List<Callable<Connection>> tasks) {
+        ExecutorService threads = Executors.newFixedThreadPool(Math.max(1, tasks.size()));
+        try {
+            return threads.invokeAll(tasks);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the database connections", ie);
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    // Helper to get what a finished task returned, or the SQLException it failed with
+    private static Connection result(Future<Connection> task) throws SQLException {
+        try {
+            return task.get();
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof SQLException) {
+                throw (SQLException) ee.getCause();
+            }
+            throw new IllegalStateException("A task on a database connection failed", ee.getCause());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the database connections", ie);
+        }
+    }
+
+    // Closes every connection in the pool, along with their cached statements
+    @Override
+    public void close() {
+        for (Connection conn : connections) {
+            StatementCache.close(conn);
+            try {
+                conn.close();
+            } catch (SQLException sqle) {
+                System.out.println("Exception: " + sqle);
+                System.out.println("Failed to close a pooled connection");
+            }
+        }
+        connections.clear();
+        idle.clear();
+    }
+}
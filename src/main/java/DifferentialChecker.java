@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+// Checks the results of a run against the InMemoryBackend, for --backend=compare
+// Every result written to the ResultSink while a transfile is processed is handed
+// to check, in file order, whichever way the lines were run (batched, in parallel,
+// pipelined). The checker reads the same line from the transfile with its own
+// reader, runs it on the in-memory backend, and reports the line if the outcome,
+// messages, or rows differ. The rows of code 5 are a set, so they are compared
+// without their order. For a line that failed with an error only the outcome is
+// compared, since the text of the exception depends on the backend
+public class DifferentialChecker implements AutoCloseable {
+
+    // Most differences printed in full for one transfile, the rest are only counted
+    private static final int MAX_REPORTED = 20;
+
+    private final Path transfile;
+    private final InMemoryBackend backend;
+    private final TransfileReader reader;
+    private final TransfileLine line = new TransfileLine();
+    private long compared = 0;
+    private long differed = 0;
+
+    public DifferentialChecker(Path transfile, InMemoryBackend backend) throws IOException {
+        this.transfile = transfile;
+        this.backend = backend;
+        this.reader = new TransfileReader(transfile.toString());
+    }
+
+    // Runs the line that result came from on the in-memory backend and compares them
+    // Lines with no result, such as those skipped by a resumed run, are skipped here too
+    public synchronized void check(LineResult result) {
+        long lineNumber = result.getLineNumber();
+        try {
+            while (line.number() < lineNumber && reader.next(line)) {
+                // Skip to the line of the result
+            }
+        } catch (IOException ioe) {
+            ResultSink.println("Exception: " + ioe);
+            ResultSink.println("Failed to read " + transfile + " for the differential check");
+            return;
+        }
+        if (line.number() != lineNumber) {
+            return;
+        }
+
+        // The caller may still be looking at the status of its own line, such as a
+        // TransactionGroup deciding whether to roll it back, so keep it as it was
+        boolean failed = LineStatus.failed();
+        LineResult expected;
+        try {
+            ResultSink.begin(lineNumber);
+            expected = ResultSink.end(JDBCProject.runLine(backend, line));
+        } finally {
+            LineStatus.reset();
+            if (failed) {
+                LineStatus.fail();
+            }
+        }
+
+        compared++;
+        if (sameResult(result, expected)) {
+            return;
+        }
+        differed++;
+        if (differed <= MAX_REPORTED) {
+            ResultSink.println("Backends disagree on line " + lineNumber + " of " + transfile + ": " + line
+                    + "\n\tmysql:  " + describe(result)
+                    + "\n\tmemory: " + describe(expected));
+        }
+    }
+
+    // Prints how many lines were compared, and how many differed
+    @Override
+    public void close() {
+        ResultSink.println("Differential check of " + transfile + ": " + compared + " lines compared, "
+                + differed + " differed");
+        try {
+            reader.close();
+        } catch (IOException ioe) {
+            ResultSink.println("Exception: " + ioe);
+        }
+    }
+
+    public long getDiffered() {
+        return differed;
+    }
+
+    // Helper to check if two results of the same line match
+    private static boolean sameResult(LineResult actual, LineResult expected) {
+        if (!actual.getOutcome().equals(expected.getOutcome())) {
+            return false;
+        }
+        if (actual.getOutcome().equals("error")) {
+            return true;
+        }
+        if (!actual.getMessages().equals(expected.getMessages())) {
+            return false;
+        }
+        if (actual.getCode() == 5) {
+            return new HashSet<>(actual.getRows()).equals(new HashSet<>(expected.getRows()));
+        }
+        return actual.getRows().equals(expected.getRows());
+    }
+
+    // Helper to show a result on one line
+    private static String describe(LineResult result) {
+        String text = result.getOutcome() + " " + String.join(" / ", result.getMessages()).replace("\n\t", " ");
+        return result.getRows().isEmpty() ? text : text + " " + result.getRows();
+    }
+}
@@ -0,0 +1,211 @@
+import java.sql.*;
+import java.util.*;
+
+// Batched execution mode for runs of Transaction Code 2
+// Consecutive code 2 lines are collected until batchSize of them are pending, or
+// until a line of any other kind is reached, and are then inserted together with
+// one existence query and one addBatch/executeBatch round-trip. With
+// rewriteBatchedStatements on the connection, the driver sends the batch as a
+// multi-row insert. Each line still reports "Duplicate Name" or "Added Employee"
+// in file order, exactly like insertEmployee does
+public class EmployeeBatchInserter {
+
+    // Most names bound into one "ename in (...)" existence query
+    private static final int MAX_NAMES_PER_LOOKUP = 1000;
+
+    // One validated code 2 line waiting to be inserted
+    private static class PendingEmployee {
+        TransfileLine line;
+        String ename;
+        String dept_name;
+        String salary;
+        String city;
+        boolean duplicate;
+    }
+
+    private final Connection conn;
+    private final int batchSize;
+    private final List<PendingEmployee> pending = new ArrayList<>();
+
+    public EmployeeBatchInserter(Connection conn, int batchSize) {
+        this.conn = conn;
+        this.batchSize = batchSize;
+    }
+
+    // Adds a code 2 line to the current batch
+    // Lines that fail validation flush the batch first, so that the error is
+    // reported after the results of every line that came before it
+    public void add(TransfileLine line) {
+
+        // Line should be of the the form: 2 ename dept_name salary city
+        if (line.fieldCount() > 5) {
+            reject(line, "Line has too many arguments, line should be of the form:\n\t" +
+                    "2 ename dept_name salary city");
+            return;
+        }
+        if (line.fieldCount() < 5) {
+            reject(line, "Line has too few arguments, line should be of the form:\n\t" +
+                    "2 ename dept_name salary city");
+            return;
+        }
+        String salary = line.field(3);
+        if (!JDBCProject.isNumeric(salary)) {
+            reject(line, "Salary must be a valid number");
+            return;
+        }
+
+        PendingEmployee emp = new PendingEmployee();
+        emp.line = line.copy();
+        emp.ename = line.field(1);
+        emp.dept_name = line.field(2);
+        emp.salary = salary;
+        emp.city = line.field(4);
+        pending.add(emp);
+
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    // The earliest line still waiting to be inserted, or null if none are
+    public TransfileLine firstPending() {
+        return pending.isEmpty() ? null : pending.get(0).line;
+    }
+
+    // Helper to report a line that failed validation, after flushing the batch
+    private void reject(TransfileLine line, String message) {
+        flush();
+        long start = System.nanoTime();
+        ResultSink.begin(line.number());
+        ResultSink.invalid(message);
+        ResultSink.write(ResultSink.end(2));
+        Metrics.lineFinished(2, System.nanoTime() - start);
+    }
+
+    // Inserts every pending line and prints the result of each in file order
+    // Must be called before any line that is not code 2 is processed, and at the
+    // end of the transfile
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            // Find which of the pending names are already in the employee table
+            // Names are compared folded, because the default MySQL collation treats
+            // "Mary" and "mary" as the same primary key
+            Set<String> takenNames;
+            try {
+                takenNames = findExistingNames();
+            } catch (SQLException sqle) {
+                ResultSink.println("Exception: " + sqle);
+                ResultSink.println("Error when checking which enames in the batch already existed in the table," +
+                        " inserting them one at a time instead");
+                for (PendingEmployee emp : pending) {
+                    ResultSink.begin(emp.line.number());
+                    JDBCProject.insertEmployee(conn, emp.ename, emp.dept_name, emp.salary, emp.city);
+                    ResultSink.write(ResultSink.end(2));
+                }
+                return;
+            }
+
+            // A name repeated inside the batch is a duplicate of its first occurrence,
+            // the same as it would be if the lines were inserted one after the other
+            List<PendingEmployee> toInsert = new ArrayList<>();
+            for (PendingEmployee emp : pending) {
+                emp.duplicate = !takenNames.add(Collation.fold(emp.ename));
+                if (!emp.duplicate) {
+                    toInsert.add(emp);
+                }
+            }
+
+            // Insert every new employee in one batch
+            // If the batch fails, any row without a successful update count is retried
+            // on its own through insertEmployee, which reports its own result
+            int[] updateCounts = new int[0];
+            boolean batchFailed = false;
+            if (!toInsert.isEmpty()) {
+                try {
+                    PreparedStatement insertEmp = StatementCache.prepare(conn, JDBCProject.INSERT_EMPLOYEE_SQL);
+                    for (PendingEmployee emp : toInsert) {
+                        insertEmp.setString(1, emp.ename);
+                        insertEmp.setString(2, emp.dept_name);
+                        insertEmp.setString(3, emp.salary);
+                        insertEmp.setString(4, emp.city);
+                        insertEmp.addBatch();
+                    }
+                    updateCounts = insertEmp.executeBatch();
+                } catch (BatchUpdateException bue) {
+                    updateCounts = bue.getUpdateCounts();
+                    batchFailed = true;
+                } catch (SQLException sqle) {
+                    batchFailed = true;
+                }
+            }
+
+            // Report every line in the order it appeared in the transfile
+            int insertIndex = 0;
+            for (PendingEmployee emp : pending) {
+                ResultSink.begin(emp.line.number());
+                if (emp.duplicate) {
+                    ResultSink.duplicate("Duplicate Name: " + emp.ename);
+                } else {
+                    boolean inserted = insertIndex < updateCounts.length
+                            && updateCounts[insertIndex] != Statement.EXECUTE_FAILED;
+                    insertIndex++;
+                    if (batchFailed && !inserted) {
+                        JDBCProject.insertEmployee(conn, emp.ename, emp.dept_name, emp.salary, emp.city);
+                    } else {
+                        ResultSink.println("Added Employee: " + emp.ename + " " + emp.dept_name + " "
+                                + emp.salary + " " + emp.city);
+                        JDBCProject.employeeInserted(emp.ename, emp.dept_name);
+                    }
+                }
+                ResultSink.write(ResultSink.end(2));
+            }
+        } finally {
+            // The whole batch is counted as code 2 lines that took an equal share of the time
+            Metrics.linesFinished(2, pending.size(), System.nanoTime() - start);
+            pending.clear();
+        }
+    }
+
+    // Helper to find which pending enames are already in the employee table
+    // Returns the folded names that were found
+    private Set<String> findExistingNames() throws SQLException {
+        Set<String> existing = new HashSet<>();
+        for (int start = 0; start < pending.size(); start += MAX_NAMES_PER_LOOKUP) {
+            int end = Math.min(start + MAX_NAMES_PER_LOOKUP, pending.size());
+
+            StringBuilder query = new StringBuilder("select ename from employee where ename in (");
+            for (int i = start; i < end; i++) {
+                query.append(i == start ? "?" : ", ?");
+            }
+            query.append(")");
+
+            // Only full sized lookups are cached, so that the last partial chunk of
+            // each batch does not leave a differently sized statement behind
+            boolean fullLookup = end - start == MAX_NAMES_PER_LOOKUP;
+            PreparedStatement namesExist = fullLookup
+                    ? StatementCache.prepare(conn, query.toString())
+                    : conn.prepareStatement(query.toString());
+            if (!fullLookup && Metrics.isEnabled()) {
+                namesExist = Metrics.instrument(namesExist);
+            }
+            try {
+                for (int i = start; i < end; i++) {
+                    namesExist.setString(i - start + 1, pending.get(i).ename);
+                }
+                ResultSet rs = namesExist.executeQuery();
+                while (rs.next()) {
+                    existing.add(Collation.fold(rs.getString(1)));
+                }
+            } finally {
+                if (!fullLookup) {
+                    namesExist.close();
+                }
+            }
+        }
+        return existing;
+    }
+}
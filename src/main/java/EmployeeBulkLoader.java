@@ -0,0 +1,282 @@
+import com.mysql.cj.jdbc.JdbcStatement;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+
+// Bulk load mode for long runs of Transaction Code 2, for large imports
+// Consecutive code 2 lines are collected, and once a run reaches minRunLength
+// lines, its employees are streamed from memory into a temporary staging table
+// with LOAD DATA LOCAL INFILE, and copied into employee with one insert ... select.
+// Names already in employee are found with one join against the staging table,
+// and names repeated inside the run are found while collecting it, so each line
+// still reports "Duplicate Name" or "Added Employee" in file order
+// Runs shorter than minRunLength are handed back to the usual path, through the
+// EmployeeBatchInserter if batching is enabled, or one line at a time otherwise
+// Very long runs are loaded in chunks of MAX_ROWS_PER_LOAD lines
+public class EmployeeBulkLoader {
+
+    private static final int MAX_ROWS_PER_LOAD = 100_000;
+
+    // The staging columns are wider than the employee columns, so that a value that
+    // is too long fails the insert into employee the same way insertEmployee would,
+    // instead of being cut short by LOAD DATA
+    private static final String CREATE_STAGING_SQL = "create temporary table if not exists employee_staging (\n" +
+            "seq int primary key,\n" +
+            "ename varchar(255),\n" +
+            "dept_name varchar(255),\n" +
+            "salary varchar(255),\n" +
+            "city varchar(255)\n" +
+            ")";
+    // Not truncate, which commits the open transaction even on a temporary table,
+    // and with it any TransactionGroup the load is part of
+    private static final String CLEAR_STAGING_SQL = "delete from employee_staging";
+    // The file name is not read, the rows come from the stream set on the statement
+    private static final String LOAD_STAGING_SQL = "load data local infile 'employees.tsv' " +
+            "into table employee_staging character set utf8mb4 " +
+            "fields terminated by '\\t' escaped by '\\\\' lines terminated by '\\n' " +
+            "(seq, ename, dept_name, salary, city)";
+    private static final String SELECT_EXISTING_STAGED_SQL = "select s.seq from employee_staging s " +
+            "join employee e on e.ename = s.ename";
+    private static final String INSERT_STAGED_SQL = "insert into employee (ename, dept_name, salary, city) " +
+            "select s.ename, s.dept_name, s.salary, s.city from employee_staging s " +
+            "where not exists (select 1 from employee e where e.ename = s.ename) order by s.seq";
+
+    // One code 2 line of a bulk loaded run
+    private static class StagedEmployee {
+        TransfileLine line;
+        String invalidMessage;
+        String ename;
+        String dept_name;
+        String salary;
+        String city;
+        boolean duplicate;
+    }
+
+    private final Connection conn;
+    private final int minRunLength;
+    // Where runs too short to bulk load go, or null to process each line on its own
+    private final EmployeeBatchInserter batcher;
+    private final List<TransfileLine> pending = new ArrayList<>();
+    // Whether the current run has already been bulk loaded in part
+    private boolean inLongRun = false;
+    // Set once LOAD DATA has failed, for example because the server has local_infile
+    // turned off, after which every run goes through the usual path
+    private boolean available = true;
+    // Whether the last LOAD DATA succeeded, so a later failure is not blamed on it
+    private boolean stagingTableLoaded = false;
+
+    public EmployeeBulkLoader(Connection conn, int minRunLength, EmployeeBatchInserter batcher) {
+        this.conn = conn;
+        this.minRunLength = minRunLength;
+        this.batcher = batcher;
+    }
+
+    // Adds a code 2 line to the current run
+    public void add(TransfileLine line) {
+        if (!available) {
+            processNormally(line);
+            return;
+        }
+        pending.add(line.copy());
+        if (pending.size() >= Math.max(minRunLength, MAX_ROWS_PER_LOAD)) {
+            load();
+            inLongRun = true;
+        }
+    }
+
+    // Ends the current run, loading it in bulk if it was long enough
+    // Must be called before any line that is not code 2 is processed, and at the
+    // end of the transfile
+    public void flush() {
+        if (inLongRun || pending.size() >= minRunLength) {
+            load();
+        } else {
+            for (TransfileLine line : pending) {
+                processNormally(line);
+            }
+            pending.clear();
+        }
+        if (batcher != null) {
+            batcher.flush();
+        }
+        inLongRun = false;
+    }
+
+    // The earliest line still waiting to be inserted, or null if none are
+    public TransfileLine firstPending() {
+        if (!pending.isEmpty()) {
+            return pending.get(0);
+        }
+        return batcher != null ? batcher.firstPending() : null;
+    }
+
+    // Helper to send a line down the path it would take without bulk loading
+    private void processNormally(TransfileLine line) {
+        if (batcher != null) {
+            batcher.add(line);
+        } else {
+            JDBCProject.processLine(conn, line);
+        }
+    }
+
+    // Helper to bulk load every pending line and report the result of each in file order
+    private void load() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            // Validate the lines, and find the names repeated inside the run
+            // Names are compared folded, because the default MySQL collation treats
+            // "Mary" and "mary" as the same primary key
+            List<StagedEmployee> employees = new ArrayList<>(pending.size());
+            List<StagedEmployee> staged = new ArrayList<>(pending.size());
+            Set<String> namesInRun = new HashSet<>();
+            for (TransfileLine line : pending) {
+                StagedEmployee emp = validate(line);
+                employees.add(emp);
+                if (emp.invalidMessage == null) {
+                    emp.duplicate = !namesInRun.add(Collation.fold(emp.ename));
+                    if (!emp.duplicate) {
+                        staged.add(emp);
+                    }
+                }
+            }
+
+            // Stage and insert the new employees, marking the ones that already existed
+            boolean loaded = false;
+            if (!staged.isEmpty()) {
+                try {
+                    loadStaged(staged);
+                    loaded = true;
+                } catch (SQLException sqle) {
+                    ResultSink.println("Exception: " + sqle);
+                    if (!stagingTableLoaded) {
+                        available = false;
+                        ResultSink.println("Bulk loading is not available, inserting employees the usual way instead");
+                    } else {
+                        ResultSink.println("Error when bulk inserting employees, inserting them one at a time instead");
+                    }
+                }
+            }
+
+            for (StagedEmployee emp : employees) {
+                ResultSink.begin(emp.line.number());
+                if (emp.invalidMessage != null) {
+                    ResultSink.invalid(emp.invalidMessage);
+                } else if (emp.duplicate) {
+                    ResultSink.duplicate("Duplicate Name: " + emp.ename);
+                } else if (!loaded) {
+                    JDBCProject.insertEmployee(conn, emp.ename, emp.dept_name, emp.salary, emp.city);
+                } else {
+                    ResultSink.println("Added Employee: " + emp.ename + " " + emp.dept_name + " "
+                            + emp.salary + " " + emp.city);
+                    JDBCProject.employeeInserted(emp.ename, emp.dept_name);
+                }
+                ResultSink.write(ResultSink.end(2));
+            }
+        } finally {
+            // The whole run is counted as code 2 lines that took an equal share of the time
+            Metrics.linesFinished(2, pending.size(), System.nanoTime() - start);
+            pending.clear();
+        }
+    }
+
+    // Helper to stream the staged employees into the staging table, mark the ones
+    // already in employee as duplicates, and insert the rest into employee
+    private void loadStaged(List<StagedEmployee> staged) throws SQLException {
+        stagingTableLoaded = false;
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(CREATE_STAGING_SQL);
+            stmt.executeUpdate(CLEAR_STAGING_SQL);
+
+            // The rows are written tab separated, and each is numbered by its index
+            // in staged, so the rows found in employee can be matched back to lines
+            ByteArrayOutputStream rows = new ByteArrayOutputStream(staged.size() * 48);
+            StringBuilder row = new StringBuilder();
+            for (int seq = 0; seq < staged.size(); seq++) {
+                StagedEmployee emp = staged.get(seq);
+                row.setLength(0);
+                row.append(seq);
+                appendField(row, emp.ename);
+                appendField(row, emp.dept_name);
+                appendField(row, emp.salary);
+                appendField(row, emp.city);
+                row.append('\n');
+                rows.writeBytes(row.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            stmt.unwrap(JdbcStatement.class).setLocalInfileInputStream(new ByteArrayInputStream(rows.toByteArray()));
+            int stagedRows = stmt.executeUpdate(LOAD_STAGING_SQL);
+            Metrics.statementExecuted(stagedRows);
+            stagingTableLoaded = true;
+
+            ResultSet existing = stmt.executeQuery(SELECT_EXISTING_STAGED_SQL);
+            int existingRows = 0;
+            while (existing.next()) {
+                staged.get(existing.getInt(1)).duplicate = true;
+                existingRows++;
+            }
+            Metrics.statementExecuted(existingRows);
+
+            Metrics.statementExecuted(stmt.executeUpdate(INSERT_STAGED_SQL));
+        } catch (SQLException sqle) {
+            // Nothing was inserted, so no line is a duplicate of a row from this run
+            for (StagedEmployee emp : staged) {
+                emp.duplicate = false;
+            }
+            throw sqle;
+        }
+    }
+
+    // Helper to check a code 2 line the same way processLine does
+    private static StagedEmployee validate(TransfileLine line) {
+        StagedEmployee emp = new StagedEmployee();
+        emp.line = line;
+
+        // Line should be of the the form: 2 ename dept_name salary city
+        if (line.fieldCount() > 5) {
+            emp.invalidMessage = "Line has too many arguments, line should be of the form:\n\t" +
+                    "2 ename dept_name salary city";
+            return emp;
+        }
+        if (line.fieldCount() < 5) {
+            emp.invalidMessage = "Line has too few arguments, line should be of the form:\n\t" +
+                    "2 ename dept_name salary city";
+            return emp;
+        }
+        emp.salary = line.field(3);
+        if (!JDBCProject.isNumeric(emp.salary)) {
+            emp.invalidMessage = "Salary must be a valid number";
+            return emp;
+        }
+        emp.ename = line.field(1);
+        emp.dept_name = line.field(2);
+        emp.city = line.field(4);
+        return emp;
+    }
+
+    // Helper to add one tab separated field, escaping the characters LOAD DATA
+    // would otherwise read as separators
+    private static void appendField(StringBuilder row, String value) {
+        row.append('\t');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    row.append("\\\\");
+                    break;
+                case '\t':
+                    row.append("\\t");
+                    break;
+                case '\n':
+                    row.append("\\n");
+                    break;
+                default:
+                    row.append(c);
+            }
+        }
+    }
+}
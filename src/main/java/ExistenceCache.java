@@ -0,0 +1,200 @@
+import java.sql.*;
+import java.util.*;
+
+// Client side answers to "does this ename (or dept_name) exist", so that most of
+// the existence checks of codes 1-4 never reach the database
+//  - A Bloom filter of every name in the column. A name that is not in the filter
+//    is definitely not in the table, which answers deletes of missing rows and
+//    inserts of new names. The filter is loaded from the table the first time it
+//    is needed, names are added to it as rows are inserted, and names are never
+//    taken out, since a Bloom filter cannot forget, so it only ever errs towards
+//    "maybe", and those lookups go to the database as before
+//  - A bounded LRU of the names most recently looked up or changed, and whether
+//    they exist, which answers repeated lookups of the same names
+// The handlers report every row they insert or delete, so both stay coherent
+// with the table. If a line fails part way (or is rolled back), the LRU is
+// cleared rather than guessing which of its statements took effect. This relies
+// on this run being the only one changing the tables while it runs
+// Names are folded with Collation.fold, like the default MySQL collation compares
+// them. A "definitely absent" answer is only given when the fold is known to agree
+// with MySQL: for a plain ASCII name, and only while every name in the filter folds
+// to plain ASCII, since an ASCII name may equal a name the fold does not cover.
+// Any other name is looked up in the database every time
+public class ExistenceCache {
+
+    // Number of names the LRU remembers
+    private static final int LRU_CAPACITY = 1 << 16;
+    // Bits of the filter per name it was sized for, and hashes per name, which give
+    // about a 1% false positive rate
+    private static final int BITS_PER_NAME = 10;
+    private static final int HASHES = 7;
+    // Smallest number of names the filter is sized for
+    private static final int MIN_NAMES = 1 << 16;
+
+    private final String table;
+    private final String column;
+
+    // The Bloom filter, or null until it is loaded
+    private long[] bits;
+    private int bitMask;
+    // Names the filter was sized for, and names added to it so far. Once it holds
+    // more than it was sized for, it is loaded again at twice the size
+    private long capacity;
+    private long added;
+    // Names added to the filter whose fold is not plain ASCII, which may be equal in
+    // MySQL to an ASCII name that folds differently
+    private long inexactNames;
+
+    private final LinkedHashMap<String, Boolean> recent = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > LRU_CAPACITY;
+        }
+    };
+
+    // Lookups answered by the filter, by the LRU, and by neither
+    private long definiteNegatives = 0;
+    private long cachedAnswers = 0;
+    private long databaseLookups = 0;
+
+    // Caches the names in the given column of the given table, which must be its primary key
+    public ExistenceCache(String table, String column) {
+        this.table = table;
+        this.column = column;
+    }
+
+    // Returns whether name exists if that is known without the database, or null if
+    // the database has to be asked (and the answer passed to found)
+    public synchronized Boolean lookup(Connection conn, String name) throws SQLException {
+        if (bits == null || added > capacity) {
+            load(conn);
+        }
+        if (!Collation.isExact(name)) {
+            databaseLookups++;
+            return null;
+        }
+        String key = Collation.fold(name);
+        Boolean known = recent.get(key);
+        if (known != null) {
+            cachedAnswers++;
+            return known;
+        }
+        if (inexactNames == 0 && !mightContain(key)) {
+            definiteNegatives++;
+            return Boolean.FALSE;
+        }
+        databaseLookups++;
+        return null;
+    }
+
+    // Records what the database said about a name that lookup could not answer
+    public synchronized void found(String name, boolean exists) {
+        if (Collation.isExact(name)) {
+            recent.put(Collation.fold(name), exists);
+        }
+    }
+
+    // Called after a row with the given name was inserted
+    public synchronized void added(String name) {
+        String key = Collation.fold(name);
+        remember(name, key, Boolean.TRUE);
+        if (bits != null) {
+            add(key);
+        }
+    }
+
+    // Called after the row with the given name was deleted
+    public synchronized void removed(String name) {
+        remember(name, Collation.fold(name), Boolean.FALSE);
+    }
+
+    // Helper to remember whether a name that was just inserted or deleted exists
+    // A name whose fold is not exact may also have changed whether other names
+    // exist, so the recent names are forgotten instead
+    private void remember(String name, String key, Boolean exists) {
+        if (Collation.isExact(name)) {
+            recent.put(key, exists);
+        } else {
+            recent.clear();
+        }
+    }
+
+    // Forgets the recent names, after a line that may have changed rows failed
+    // The filter is kept, since it may only hold more names than the table
+    public synchronized void invalidate() {
+        recent.clear();
+    }
+
+    // Summary of how the lookups were answered, printed at the end of a run
+    public synchronized String report() {
+        long lookups = definiteNegatives + cachedAnswers + databaseLookups;
+        double answered = lookups == 0 ? 0 : 100.0 * (definiteNegatives + cachedAnswers) / lookups;
+        return String.format("Existence cache for %s: %d lookups, %d definitely absent, %d remembered, " +
+                "%d sent to the database (%.1f%% answered without it)", table, lookups, definiteNegatives,
+                cachedAnswers, databaseLookups, answered);
+    }
+
+    // Helper to load the filter from every name in the table, sized for at least
+    // twice as many names as it holds now
+    private void load(Connection conn) throws SQLException {
+        List<String> keys = new ArrayList<>();
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("select " + column + " from " + table);
+            while (rs.next()) {
+                keys.add(Collation.fold(rs.getString(1)));
+            }
+        }
+        capacity = Math.max(MIN_NAMES, 2L * Math.max(keys.size(), added));
+        long bitCount = Long.highestOneBit(capacity * BITS_PER_NAME - 1) << 1;
+        bits = new long[(int) (bitCount >>> 6)];
+        bitMask = (int) (bitCount - 1);
+        added = 0;
+        inexactNames = 0;
+        for (String key : keys) {
+            add(key);
+        }
+    }
+
+    // Helper to set the bits of a folded name
+    private void add(String key) {
+        long hash = hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & bitMask;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        added++;
+        if (!Collation.isExact(key)) {
+            inexactNames++;
+        }
+    }
+
+    // Helper to check if every bit of a folded name is set
+    private boolean mightContain(String key) {
+        long hash = hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & bitMask;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 64 bit FNV-1a hash of the characters of a string, with a final mix so both
+    // halves are usable as independent hashes
+    private static long hash64(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,277 @@
+import java.sql.*;
+import java.util.*;
+
+// Runs the six transaction codes against tables held in memory instead of MySQL
+// Used by --backend=memory to check and dry run a transfile without a database,
+// and by --backend=compare to check the results of the JDBC backend line by line
+// The rules are the same as the MySQL tables enforce:
+//  - ename and dept_name are primary keys, compared folded with Collation.fold,
+//    so "Mary" and "mary" are duplicates, as are names that differ only in their
+//    accents. Collation.fold only covers the letters names are usually written
+//    with, so for a name with other characters MySQL may find a duplicate where
+//    memory finds none, and --backend=compare reports those lines as differences
+//  - a department's manager must be an existing employee
+//  - deleting an employee sets to null the manager of the departments they
+//    managed, and deleting a department sets to null the dept_name of its employees
+//  - names longer than the varchar(25) columns fail the insert
+// and every code reports exactly what the JDBC handlers report
+// Rows are kept in hash maps keyed by their primary key, plus the same secondary
+// indexes the tables have, employees by dept_name and departments by mname, so
+// every code is a few hash lookups
+public class InMemoryBackend implements TransactionBackend {
+
+    // Longest value the varchar(25) columns of the tables can hold
+    private static final int MAX_COLUMN_LENGTH = 25;
+
+    // A row of the employee table
+    private static class Employee {
+        String ename;
+        String dept_name;
+        String salary;
+        String city;
+    }
+
+    // A row of the department table
+    private static class Department {
+        String dept_name;
+        String mname;
+    }
+
+    // The tables, keyed by their folded primary key
+    private final Map<String, Employee> employees = new HashMap<>();
+    private final Map<String, Department> departments = new HashMap<>();
+    // The secondary indexes, keyed by the folded dept_name and mname
+    private final Map<String, Set<Employee>> employeesByDepartment = new HashMap<>();
+    private final Map<String, Set<Department>> departmentsByManager = new HashMap<>();
+
+    // Copies every row of the employee and department tables, so the backend starts
+    // from the same state as the database
+    public void load(Connection conn) throws SQLException {
+        employees.clear();
+        departments.clear();
+        employeesByDepartment.clear();
+        departmentsByManager.clear();
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet employeeRows = stmt.executeQuery("select ename, dept_name, salary, city from employee");
+            while (employeeRows.next()) {
+                String ename = employeeRows.getString(1);
+                addEmployee(Collation.fold(ename), ename, employeeRows.getString(2), employeeRows.getString(3),
+                        employeeRows.getString(4));
+            }
+            ResultSet departmentRows = stmt.executeQuery("select dept_name, mname from department");
+            while (departmentRows.next()) {
+                String dept_name = departmentRows.getString(1);
+                addDepartment(Collation.fold(dept_name), dept_name, departmentRows.getString(2));
+            }
+        }
+    }
+
+    public int employeeCount() {
+        return employees.size();
+    }
+
+    public int departmentCount() {
+        return departments.size();
+    }
+
+    @Override
+    public void deleteEmployee(String ename) {
+        String key = Collation.fold(ename);
+        Employee emp = employees.remove(key);
+        if (emp == null) {
+            ResultSink.notFound("Not Found: " + ename);
+            return;
+        }
+        // Set to null the mname of every department the employee managed
+        Set<Department> managed = departmentsByManager.remove(key);
+        if (managed != null) {
+            for (Department dept : managed) {
+                dept.mname = null;
+            }
+        }
+        unindex(employeesByDepartment, emp.dept_name, emp);
+        ResultSink.println("Deleted Employee: " + ename);
+    }
+
+    @Override
+    public void insertEmployee(String ename, String dept_name, String salary, String city) {
+        String key = Collation.fold(ename);
+        if (employees.containsKey(key)) {
+            ResultSink.duplicate("Duplicate Name: " + ename);
+            return;
+        }
+        String tooLong = tooLong("ename", ename);
+        if (tooLong == null) {
+            tooLong = tooLong("dept_name", dept_name);
+        }
+        if (tooLong == null) {
+            tooLong = tooLong("city", city);
+        }
+        if (tooLong != null) {
+            LineStatus.fail();
+            ResultSink.println("Exception: " + tooLong);
+            ResultSink.println("Failed to insert new employee: " + ename + " " + dept_name
+                    + " " + salary + " " + city);
+            return;
+        }
+        addEmployee(key, ename, dept_name, salary, city);
+        ResultSink.println("Added Employee: " + ename + " " + dept_name + " " + salary + " " + city);
+    }
+
+    @Override
+    public void deleteDepartment(String dept_name) {
+        String key = Collation.fold(dept_name);
+        Department dept = departments.remove(key);
+        if (dept == null) {
+            ResultSink.notFound("Not Found: " + dept_name);
+            return;
+        }
+        unindex(departmentsByManager, dept.mname, dept);
+        ResultSink.println("Deleted: " + dept_name + " Department");
+
+        // Set to null the dept_name of every employee in the department
+        Set<Employee> members = employeesByDepartment.remove(key);
+        if (members != null) {
+            for (Employee emp : members) {
+                emp.dept_name = null;
+            }
+        }
+    }
+
+    @Override
+    public void insertDepartment(String dept_name, String mname) {
+        if (!employees.containsKey(Collation.fold(mname))) {
+            ResultSink.notFound("Manager name does not exist: " + mname);
+            return;
+        }
+        String tooLong = tooLong("dept_name", dept_name);
+        if (tooLong != null) {
+            LineStatus.fail();
+            ResultSink.println("Error inserting the department, Exception: " + tooLong);
+            return;
+        }
+        // A department of the same name is replaced, its employees stay in it
+        String key = Collation.fold(dept_name);
+        Department existing = departments.remove(key);
+        if (existing != null) {
+            ResultSink.println("Department already exists, deleting: " + dept_name);
+            unindex(departmentsByManager, existing.mname, existing);
+        }
+        addDepartment(key, dept_name, mname);
+        ResultSink.println("Added department: " + dept_name + " " + mname);
+    }
+
+    @Override
+    public void listEmployeesUnder(String mname) {
+        Set<Department> managed = departmentsByManager.get(Collation.fold(mname));
+        if (managed == null || managed.isEmpty()) {
+            ResultSink.notFound("No department managed by the given name: " + mname);
+            return;
+        }
+
+        // Breadth first search from the manager, the employees of every department
+        // managed by an employee are under them
+        HashSet<String> found = new HashSet<>();
+        Set<Employee> visited = new HashSet<>();
+        ArrayDeque<Set<Department>> queue = new ArrayDeque<>();
+        queue.add(managed);
+        while (!queue.isEmpty()) {
+            for (Department dept : queue.remove()) {
+                Set<Employee> members = employeesByDepartment.get(Collation.fold(dept.dept_name));
+                if (members == null) {
+                    continue;
+                }
+                for (Employee emp : members) {
+                    if (visited.add(emp)) {
+                        found.add(emp.ename);
+                        Set<Department> next = departmentsByManager.get(Collation.fold(emp.ename));
+                        if (next != null) {
+                            queue.add(next);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Remove mname, as a manager is not under themself. This matches the name as
+        // written on the line, the same as the JDBC handler does
+        found.remove(mname);
+        if (found.isEmpty()) {
+            ResultSink.println("No employees directly or indirectly under " + mname);
+        }
+        ResultSink.println("All employees directly and indirectly under " + mname + ":");
+        for (String emp : found) {
+            ResultSink.row(emp);
+        }
+    }
+
+    @Override
+    public void listDepartments(String mname) {
+        Set<Department> managed = departmentsByManager.get(Collation.fold(mname));
+        if (managed == null || managed.isEmpty()) {
+            ResultSink.notFound("No department managed by the given name: " + mname);
+            return;
+        }
+        // In the order the mname index returns them, by dept_name
+        List<String> names = new ArrayList<>(managed.size());
+        for (Department dept : managed) {
+            names.add(dept.dept_name);
+        }
+        names.sort(String.CASE_INSENSITIVE_ORDER);
+        ResultSink.println("All of the departments managed by " + mname + ":");
+        for (String dept_name : names) {
+            ResultSink.row(dept_name);
+        }
+    }
+
+    // Helper to add an employee row under its folded key, and index it by dept_name
+    private void addEmployee(String key, String ename, String dept_name, String salary, String city) {
+        Employee emp = new Employee();
+        emp.ename = ename;
+        emp.dept_name = dept_name;
+        emp.salary = salary;
+        emp.city = city;
+        employees.put(key, emp);
+        index(employeesByDepartment, dept_name, emp);
+    }
+
+    // Helper to add a department row under its folded key, and index it by mname
+    private void addDepartment(String key, String dept_name, String mname) {
+        Department dept = new Department();
+        dept.dept_name = dept_name;
+        dept.mname = mname;
+        departments.put(key, dept);
+        index(departmentsByManager, mname, dept);
+    }
+
+    // Helper to add a row to a secondary index, rows with a null key are not indexed
+    private static <T> void index(Map<String, Set<T>> index, String key, T row) {
+        if (key != null) {
+            index.computeIfAbsent(Collation.fold(key), k -> new HashSet<>()).add(row);
+        }
+    }
+
+    // Helper to remove a row from a secondary index
+    private static <T> void unindex(Map<String, Set<T>> index, String key, T row) {
+        if (key == null) {
+            return;
+        }
+        String folded = Collation.fold(key);
+        Set<T> rows = index.get(folded);
+        if (rows != null) {
+            rows.remove(row);
+            if (rows.isEmpty()) {
+                index.remove(folded);
+            }
+        }
+    }
+
+    // Helper to give the error MySQL reports for a value too long for its column, or
+    // null if it fits
+    private static String tooLong(String column, String value) {
+        if (value.codePointCount(0, value.length()) <= MAX_COLUMN_LENGTH) {
+            return null;
+        }
+        return "Data too long for column '" + column + "'";
+    }
+}
@@ -1,113 +1,190 @@
-import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.sql.*;
 import java.util.*;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class JDBCProject {
 
+    // Every statement run by the transaction handlers
+    // Each is prepared once per connection through the StatementCache
+    static final String COUNT_EMPLOYEE_SQL = "Select count(*) from employee where ename = ?";
+    static final String INSERT_EMPLOYEE_SQL = "insert into employee values(?, ?, ?, ?)";
+    static final String DELETE_EMPLOYEE_SQL = "delete from employee where ename = ?";
+    static final String NULL_EMPLOYEE_DEPARTMENT_SQL = "update employee set dept_name = null where dept_name = ?";
+    static final String SELECT_DEPARTMENT_EMPLOYEES_SQL = "select ename from employee where dept_name = ?";
+    static final String COUNT_DEPARTMENT_SQL = "Select count(*) from department where dept_name = ?";
+    static final String INSERT_DEPARTMENT_SQL = "insert into department values(?, ?)";
+    static final String DELETE_DEPARTMENT_SQL = "delete from department where dept_name = ?";
+    static final String NULL_DEPARTMENT_MANAGER_SQL = "update department set mname = NULL where mname = ?";
+    static final String COUNT_MANAGED_DEPARTMENTS_SQL = "Select count(*) from department where mname = ?";
+    static final String SELECT_MANAGED_DEPARTMENTS_SQL = "select dept_name from department where mname = ?";
+    static final String SUBORDINATES_CTE = "with recursive subordinates (ename) as (\n" +
+            "    select e.ename from department d join employee e on e.dept_name = d.dept_name\n" +
+            "    where d.mname = ?\n" +
+            "    union\n" +
+            "    select e.ename from subordinates s\n" +
+            "    join department d on d.mname = s.ename\n" +
+            "    join employee e on e.dept_name = d.dept_name\n" +
+            ")\n";
+    static final String SELECT_ALL_SUBORDINATES_SQL = SUBORDINATES_CTE +
+            "select 0, null from dual where exists (select 1 from department where mname = ?)\n" +
+            "union all\n" +
+            "select 1, ename from subordinates";
+    // The subordinates alone, for a code 5 line whose rows are streamed
+    static final String STREAM_ALL_SUBORDINATES_SQL = SUBORDINATES_CTE + "select ename from subordinates";
+
+    // Which engine finds the employees under a manager for Transaction Code 5
+    static RunOptions.HierarchyEngine hierarchyEngine = RunOptions.HierarchyEngine.BFS;
+
+    // In-memory copy of the org chart that answers codes 5 and 6, or null if disabled
+    static OrgGraph orgGraph = null;
+
+    // Client side existence checks of enames and dept_names for codes 1-4, or null if disabled
+    static ExistenceCache employeeNames = null;
+    static ExistenceCache departmentNames = null;
+
+    // Rows of a code 5 or 6 result fetched from the server at a time, through a
+    // cursor, and written out as they arrive, or 0 to read every result whole
+    static int streamRows = 0;
+
+    // The replicas codes 5 and 6 are read from, or null to read from the primary
+    static ReadReplicas readReplicas = null;
+
+    // The in-memory tables every result is checked against with --backend=compare,
+    // or null if the results are not checked
+    static InMemoryBackend compareBackend = null;
+
+    // Whether codes 1-4 run as a single statement each, and work out "Not Found" and
+    // "Duplicate Name" from the number of rows the statement changed
+    // The tables are then created with the cascades done by the server
+    static boolean singleStatement = false;
+
+    // The statements used by codes 1-4 in single statement mode
+    // These rely on the connection reporting affected rows (useAffectedRows), so that
+    // an "on duplicate key update" that changes nothing counts 0 rows
+    static final String INSERT_EMPLOYEE_IF_NEW_SQL = "insert into employee values(?, ?, ?, ?) " +
+            "on duplicate key update ename = ename";
+    static final String UPSERT_DEPARTMENT_SQL = "insert into department values(?, ?) " +
+            "on duplicate key update dept_name = values(dept_name), mname = values(mname)";
+
+    // MySQL error for a foreign key that references a row that does not exist
+    static final int NO_REFERENCED_ROW_ERROR = 1452;
+
     // Method that runs at the very start, creating the employee and department tables
-    // in the database. If an error is encountered here, the program will exit, because
-    // none of the queries can be run properly if the tables are not set up
+    // in the database, or bringing tables left by an earlier run up to date, and then
+    // checking that every query the handlers run can use an index. If an error is
+    // encountered here, the program will exit, because none of the queries can be run
+    // properly if the tables are not set up
     public static void setupTables(Connection conn) {
+        setupTables(conn, false);
+    }
 
-        // Query to create the employee table
-        // ename is the primary key
-        // salary is numeric, so extra care must be taken when assign it's value
-        String employeeTableCreationString = "CREATE TABLE employee (\n" +
-                "ename varchar(25),\n" +
-                "dept_name varchar(25),\n" +
-                "salary numeric(10, 0),\n" +
-                "city varchar(25),\n" +
-                "PRIMARY KEY (ename)\n" +
-                ");";
-        // Query to create the department table
-        // dept_name is the primary key
-        // mname is a foreign key referencing some employee in employee table
-        String departmentTableCreationString = "CREATE TABLE department (\n" +
-                "dept_name varchar(25),\n" +
-                "mname varchar(25),\n" +
-                "PRIMARY KEY (dept_name),\n" +
-                "FOREIGN KEY (mname) REFERENCES employee(ename)\n" +
-                ");";
-
-        // Try executing both queries, if either one fails, program should exit
-        // Because if one table is not set up, the whole program will break
-        try (
-                PreparedStatement stmt1 = conn.prepareStatement(employeeTableCreationString);
-                PreparedStatement stmt2 = conn.prepareStatement(departmentTableCreationString);
-        ) {
-            stmt1.executeUpdate();
-            System.out.println("Successfully created the employee table");
-            stmt2.executeUpdate();
-            System.out.println("Successfully created the department table");
-            stmt1.close();
-            stmt2.close();
+    // With fastStart, tables an earlier fast start run set up are used as they are,
+    // without checking them again, and tables set up now are marked for the next run
+    public static void setupTables(Connection conn, boolean fastStart) {
+        String marker = null;
+        try {
+            marker = SchemaManager.marker(conn);
+            if (fastStart && SchemaManager.isMarked(marker, singleStatement)) {
+                System.out.println("Using the tables set up by an earlier run");
+                return;
+            }
+            SchemaManager.ensureSchema(conn, singleStatement);
         }
         catch(SQLException sqle) {
             System.out.println("Exception: " + sqle);
             System.out.println("Failed to create the tables, exiting");
             System.exit(-1);
         }
+        SchemaManager.verifyAccessPaths(conn);
+        // Any run that sets the tables up for its mode also updates a marker left by a
+        // fast start run of the other mode, which no longer matches the tables
+        if (fastStart || SchemaManager.isAnyMarker(marker)) {
+            try {
+                SchemaManager.mark(conn, singleStatement);
+            } catch (SQLException sqle) {
+                System.out.println("Exception: " + sqle);
+                System.out.println("Could not mark the tables, the next run will check them again");
+            }
+        }
+    }
+
+    // Writes the metrics as JSON to fileName
+    // A file that cannot be written is reported, and does not fail a run that worked
+    static void writeMetricsFile(String fileName) {
+        try {
+            Metrics.writeJson(fileName);
+        } catch (IOException ioe) {
+            System.out.println("Exception: " + ioe);
+            System.out.println("Could not write the metrics to " + fileName);
+        }
+    }
+
+    // Every statement the handlers may run with the options in use, prepared on each
+    // connection before the first line of a fast start run
+    static List<String> handlerStatements() {
+        List<String> statements = new ArrayList<>(Arrays.asList(SchemaManager.HOT_QUERIES));
+        statements.add(singleStatement ? INSERT_EMPLOYEE_IF_NEW_SQL : INSERT_EMPLOYEE_SQL);
+        statements.add(singleStatement ? UPSERT_DEPARTMENT_SQL : INSERT_DEPARTMENT_SQL);
+        return statements;
     }
 
     // Method for Transaction Code 1
     // Deletes the employee associated with the given name, if such an employee
     // does not exist, prints not found, and does not execute the statement
-    public static void deleteEmployee(Connection conn, String deleteString) {
-        String[] stringArgs = deleteString.split(" ");
-
-        // Line should be: 1 (name of employee)
-        if (stringArgs.length > 2) {
-            System.out.println("Line has too many arguments, line should be of the form:\n\t" +
-                    "1 ename");
-            return;
-        }
-        if (stringArgs.length < 2) {
-            System.out.println("Line has too few arguments, line should be of the form:\n\t" +
-                    "1 ename");
+    public static void deleteEmployee(Connection conn, String ename) {
+        if (singleStatement) {
+            deleteEmployeeSingleStatement(conn, ename);
             return;
         }
-        String transcode = stringArgs[0];
-        String ename = stringArgs[1];
 
         // Check if an employee of the given name even exists, before trying to remove them
-        try(PreparedStatement nameExists = conn.prepareStatement("Select count(*) from employee where ename = ?;");
-        ) {
-            nameExists.setString(1, ename);
-
-            ResultSet rs =  nameExists.executeQuery();
-            rs.next();
-            int resultInt = rs.getInt(1);
-            if (resultInt == 0) {
-                System.out.println("Not Found: " + ename);
+        try {
+            if (!employeeExists(conn, ename)) {
+                ResultSink.notFound("Not Found: " + ename);
                 return;
             }
             // If the employee does exist, set to NULL the mname of all departments
             // in department which had the given employee as their manager
-            try(PreparedStatement updateDept = conn.prepareStatement("update department " +
-                    "set mname = NULL" +
-                    " where mname = ?;");
-            ) {
+            try {
+                PreparedStatement updateDept = StatementCache.prepare(conn, NULL_DEPARTMENT_MANAGER_SQL);
                 updateDept.setString(1, ename);
 
                 updateDept.executeUpdate();
             } catch (SQLException sqle) {
-                System.out.println("Exception: " + sqle);
-                System.out.println("Error when trying to null department managers before the associated " +
+                LineStatus.fail();
+                ResultSink.println("Exception: " + sqle);
+                ResultSink.println("Error when trying to null department managers before the associated " +
                         "employee was deleted");
             }
-            try(PreparedStatement deleteEmp = conn.prepareStatement("delete from employee where ename = ?;");
-            ) {
+            try {
+                PreparedStatement deleteEmp = StatementCache.prepare(conn, DELETE_EMPLOYEE_SQL);
                 deleteEmp.setString(1, ename);
 
                 deleteEmp.executeUpdate();
-                System.out.println("Deleted Employee: " + ename);
+                ResultSink.println("Deleted Employee: " + ename);
+                if (orgGraph != null) {
+                    orgGraph.employeeDeleted(ename);
+                }
+                if (employeeNames != null) {
+                    employeeNames.removed(ename);
+                }
             } catch (SQLException sqle) {
-                System.out.println("Exception: " + sqle);
-                System.out.println("Error when attempting to delete the employee: " + ename);
+                LineStatus.fail();
+                ResultSink.println("Exception: " + sqle);
+                ResultSink.println("Error when attempting to delete the employee: " + ename);
             }
         } catch (SQLException sqle) {
-            System.out.println("Exception: " + sqle);
-            System.out.println("Error when checking if an employee by the name of: " + ename + " exists");
+            LineStatus.fail();
+            ResultSink.println("Exception: " + sqle);
+            ResultSink.println("Error when checking if an employee by the name of: " + ename + " exists");
         }
     }
 
@@ -129,67 +206,43 @@ public class JDBCProject {
     // Inserts a new employee tuple with the given (name department salary city)
     // Checks if there is already an employee with the given name, and if so does not
     // execute the insertion, otherwise insert the new employee tuple with the name given
-    public static void insertEmployee(Connection conn, String insertString) {
-        String[] stringArgs = insertString.split(" ");
-
-        // Line should be of the the form: 5 ename dept_name salary city
-        if (stringArgs.length > 5) {
-            System.out.println("Line has too many arguments, line should be of the form:\n\t" +
-                    "2 ename dept_name salary city");
-            return;
-        }
-        if (stringArgs.length < 5) {
-            System.out.println("Line has too few arguments, line should be of the form:\n\t" +
-                    "2 ename dept_name salary city");
+    public static void insertEmployee(Connection conn, String ename, String dept_name, String salary,
+                                      String city) {
+        if (singleStatement) {
+            insertEmployeeSingleStatement(conn, ename, dept_name, salary, city);
             return;
         }
-        String transcode = stringArgs[0];
-        String ename = stringArgs[1];
-        String dept_name = stringArgs[2];
-        String salary = stringArgs[3];
-
-        // Check that the salary is a valid number, otherwise don't execute the statement
-        // Needed because the salary is declared as a numeric, rather than a varchar
-        if (!isNumeric(salary)) {
-            System.out.println("Salary must be a valid number");
-            return;
-        }
-
-        String city = stringArgs[4];
 
         // Check if the given name already exists in the employee table,
         // and if so, do not execute the statement
-        try(PreparedStatement nameExists = conn.prepareStatement("Select count(*) from employee where ename = ?");
-        ) {
-            nameExists.setString(1, ename);
-
-            ResultSet rs =  nameExists.executeQuery();
-            rs.next();
-            int resultInt = rs.getInt(1);
+        try {
             // If the name exists in the table already, return;
-            if (resultInt == 1) {
-                System.out.println("Duplicate Name: " + ename);
+            if (employeeExists(conn, ename)) {
+                ResultSink.duplicate("Duplicate Name: " + ename);
                 return;
             }
             // Since the name is not in the table, insert the new tuple for the
             // given employee name, using a prepared statement for security
-            try(PreparedStatement insertEmp = conn.prepareStatement("insert into employee values(?, ?, ?, ?)");
-            ) {
+            try {
+                PreparedStatement insertEmp = StatementCache.prepare(conn, INSERT_EMPLOYEE_SQL);
                 insertEmp.setString(1, ename);
                 insertEmp.setString(2, dept_name);
                 insertEmp.setString(3, salary);
                 insertEmp.setString(4, city);
 
                 insertEmp.executeUpdate();
-                System.out.println("Added Employee: " + ename + " " + dept_name + " " + salary + " " + city);
+                ResultSink.println("Added Employee: " + ename + " " + dept_name + " " + salary + " " + city);
+                employeeInserted(ename, dept_name);
             } catch (SQLException sqle) {
-                System.out.println("Exception: " + sqle);
-                System.out.println("Failed to insert new employee: " + ename + " " + dept_name
+                LineStatus.fail();
+                ResultSink.println("Exception: " + sqle);
+                ResultSink.println("Failed to insert new employee: " + ename + " " + dept_name
                         + " " + salary + " " + city);
             }
         } catch (SQLException sqle) {
-            System.out.println("Exception: " + sqle);
-            System.out.println("Error when checking if the ename: " + ename + " already existed in the table");
+            LineStatus.fail();
+            ResultSink.println("Exception: " + sqle);
+            ResultSink.println("Error when checking if the ename: " + ename + " already existed in the table");
         }
     }
 
@@ -198,62 +251,52 @@ public class JDBCProject {
     // If the department does not exist in the table, the statement is not executed
     // For all employees listed in employee with the given department as their dept_name,
     // set their dept_name to NULL
-    public static void deleteDepartment(Connection conn, String deleteString) {
-        String[] stringArgs = deleteString.split(" ");
-
-        // Line should be of the form: 3 (name of the department)
-        if (stringArgs.length > 2) {
-            System.out.println("Line has too many arguments, line should be of the form:\n\t" +
-                    "3 dept_name");
+    public static void deleteDepartment(Connection conn, String dept_name) {
+        if (singleStatement) {
+            deleteDepartmentSingleStatement(conn, dept_name);
             return;
         }
-        if (stringArgs.length < 2) {
-            System.out.println("Line has too few arguments, line should be of the form:\n\t" +
-                    "3 dept_name");
-            return;
-        }
-        String transcode = stringArgs[0];
-        String dept_name = stringArgs[1];
 
         // Check if a department of the given name exists
-        try(PreparedStatement deptExists = conn.prepareStatement("Select count(*) from department where dept_name = ?");
-        ) {
-            deptExists.setString(1, dept_name);
-
-            ResultSet rs = deptExists.executeQuery();
-            rs.next();
-            int resultInt = rs.getInt(1);
-            if (resultInt == 0) {
-                System.out.println("Not Found: " + dept_name);
+        try {
+            if (!departmentExists(conn, dept_name)) {
+                ResultSink.notFound("Not Found: " + dept_name);
                 return;
             }
             // Delete the department of the given name from the department table
-            try(PreparedStatement deleteDept = conn.prepareStatement("delete from department where dept_name = ?");
-            ) {
+            try {
+                PreparedStatement deleteDept = StatementCache.prepare(conn, DELETE_DEPARTMENT_SQL);
                 deleteDept.setString(1, dept_name);
 
                 deleteDept.executeUpdate();
-                System.out.println("Deleted: " + dept_name + " Department");
+                ResultSink.println("Deleted: " + dept_name + " Department");
+                if (orgGraph != null) {
+                    orgGraph.departmentDeleted(dept_name);
+                }
+                if (departmentNames != null) {
+                    departmentNames.removed(dept_name);
+                }
             } catch (SQLException sqle) {
-                System.out.println("Exception: " + sqle);
-                System.out.println("Error when attempting to delete department: " + dept_name);
+                LineStatus.fail();
+                ResultSink.println("Exception: " + sqle);
+                ResultSink.println("Error when attempting to delete department: " + dept_name);
             }
             // For every employee in the department that was just deleted, set their
             // dept_name to NULL in the employee table
-            try(PreparedStatement updateEmp = conn.prepareStatement("update employee " +
-                    "set dept_name = null" +
-                    " where dept_name = ?");
-            ) {
+            try {
+                PreparedStatement updateEmp = StatementCache.prepare(conn, NULL_EMPLOYEE_DEPARTMENT_SQL);
                 updateEmp.setString(1, dept_name);
                 updateEmp.executeUpdate();
             } catch (SQLException sqle) {
-                System.out.println("Exception: " + sqle);
-                System.out.println("Error when attempting to set to null the dept_name of every employee in the " +
+                LineStatus.fail();
+                ResultSink.println("Exception: " + sqle);
+                ResultSink.println("Error when attempting to set to null the dept_name of every employee in the " +
                         " now deleted " + dept_name + " department");
             }
         } catch (SQLException sqle) {
-            System.out.println("Exception: " + sqle);
-            System.out.println("Error when checking if department: " + dept_name + " exists");
+            LineStatus.fail();
+            ResultSink.println("Exception: " + sqle);
+            ResultSink.println("Error when checking if department: " + dept_name + " exists");
         }
     }
 
@@ -263,71 +306,226 @@ public class JDBCProject {
     // then, if a department of the given department name exists, it will delete it
     // and then insert a new department managed by the manager name given
     // Performs rigorous error checking to ensure that the insertion works correctly
-    public static void insertDepartment(Connection conn, String insertString) {
-        String[] stringArgs = insertString.split(" ");
-
-        // Input line must be of the form: transaction code department name manager name
-        if (stringArgs.length > 3) {
-            System.out.println("Line has too many arguments, line should be of the form:\n\t" +
-                    "4 dept_name mname");
-            return;
-        }
-        if (stringArgs.length < 3) {
-            System.out.println("Line has too few arguments, line should be of the form:\n\t" +
-                    "4 dept_name mname");
+    public static void insertDepartment(Connection conn, String dept_name, String mname) {
+        if (singleStatement) {
+            insertDepartmentSingleStatement(conn, dept_name, mname);
             return;
         }
-        String transcode = stringArgs[0];
-        String dept_name = stringArgs[1];
-        String mname = stringArgs[2];
 
         // Check that there is an employee with the given manager name
-        try(PreparedStatement nameExists = conn.prepareStatement("Select count(*) from employee where ename = ?");
-        ) {
-            nameExists.setString(1, mname);
-
-            ResultSet rs = nameExists.executeQuery();
-            rs.next();
-            int resultInt = rs.getInt(1);
+        try {
             // If there is no employee with the given name, return and don't execute the statement
-            if (resultInt == 0) {
-                System.out.println("Manager name does not exist: " + mname);
+            if (!employeeExists(conn, mname)) {
+                ResultSink.notFound("Manager name does not exist: " + mname);
                 return;
             }
 
             // Checks if the given department name already exists, and if it does,
             // it will delete it so that a new department may be inserted
-            try(PreparedStatement deptExists = conn.prepareStatement("Select count(*) from department where dept_name = ?");
-            ) {
-                deptExists.setString(1, dept_name);
-
-                ResultSet rsDept = deptExists.executeQuery();
-                rsDept.next();
-                int resultIntDept = rsDept.getInt(1);
+            try {
                 // If the department already exists, delete it
-                if (resultIntDept == 1) {
-                    System.out.println("Department already exists, deleting: " + dept_name);
+                if (departmentExists(conn, dept_name)) {
+                    ResultSink.println("Department already exists, deleting: " + dept_name);
                     // Delete the department
-                    try(PreparedStatement deleteDept = conn.prepareStatement("delete from department where dept_name = ?;");
-                    ) {
+                    try {
+                        PreparedStatement deleteDept = StatementCache.prepare(conn, DELETE_DEPARTMENT_SQL);
                         deleteDept.setString(1, dept_name);
 
                         deleteDept.executeUpdate();
-                    } catch (SQLException sqle) { System.out.println("Error deleting the department, Exception: " + sqle); }
+                    } catch (SQLException sqle) {
+                        LineStatus.fail();
+                        ResultSink.println("Error deleting the department, Exception: " + sqle);
+                    }
                 }
-            } catch (SQLException sqle) { System.out.println("Error checking if the department Exists," + dept_name +
-                    "\nException: " + sqle); }
+            } catch (SQLException sqle) {
+                LineStatus.fail();
+                ResultSink.println("Error checking if the department Exists," + dept_name +
+                        "\nException: " + sqle);
+            }
 
             // Insert the department under the given manager into department
-            try(PreparedStatement insertDept = conn.prepareStatement("insert into department values(?, ?)");
-            ) {
+            try {
+                PreparedStatement insertDept = StatementCache.prepare(conn, INSERT_DEPARTMENT_SQL);
                 insertDept.setString(1, dept_name);
                 insertDept.setString(2, mname);
 
                 insertDept.executeUpdate();
-                System.out.println("Added department: " + dept_name + " " + mname);
-            } catch (SQLException sqle) { System.out.println("Error inserting the department, Exception: " + sqle); }
-        } catch (SQLException sqle) { System.out.println("Error checking if the name exists, Exception: " + sqle); }
+                ResultSink.println("Added department: " + dept_name + " " + mname);
+                if (orgGraph != null) {
+                    orgGraph.departmentInserted(dept_name, mname);
+                }
+                if (departmentNames != null) {
+                    departmentNames.added(dept_name);
+                }
+            } catch (SQLException sqle) {
+                LineStatus.fail();
+                ResultSink.println("Error inserting the department, Exception: " + sqle);
+            }
+        } catch (SQLException sqle) {
+            LineStatus.fail();
+            ResultSink.println("Error checking if the name exists, Exception: " + sqle);
+        }
+    }
+
+    // Helper for codes 1, 2 and 4 (and the WriteWindow) to check if an employee of the
+    // given name exists. Answered by the existence cache when it can, and by the count
+    // query otherwise
+    static boolean employeeExists(Connection conn, String ename) throws SQLException {
+        return exists(conn, employeeNames, COUNT_EMPLOYEE_SQL, ename);
+    }
+
+    // Helper for codes 3 and 4 to check if a department of the given name exists
+    static boolean departmentExists(Connection conn, String dept_name) throws SQLException {
+        return exists(conn, departmentNames, COUNT_DEPARTMENT_SQL, dept_name);
+    }
+
+    // Helper to check if a name exists, through cache if it is not null, and through
+    // the given count query if the cache cannot tell
+    private static boolean exists(Connection conn, ExistenceCache cache, String countSql, String name)
+            throws SQLException {
+        if (cache != null) {
+            Boolean known = cache.lookup(conn, name);
+            if (known != null) {
+                return known;
+            }
+        }
+        PreparedStatement count = StatementCache.prepare(conn, countSql);
+        count.setString(1, name);
+
+        ResultSet rs = count.executeQuery();
+        rs.next();
+        boolean found = rs.getInt(1) > 0;
+        if (cache != null) {
+            cache.found(name, found);
+        }
+        return found;
+    }
+
+    // Called after a line of code 1, 3 or 4 ran on the primary, so a later read on a
+    // replica knows to wait for it
+    static void tablesChanged() {
+        if (readReplicas != null) {
+            readReplicas.wrote();
+        }
+    }
+
+    // Called after an employee was inserted by any of the code 2 paths, to keep the
+    // client side copies of the tables up to date
+    static void employeeInserted(String ename, String dept_name) {
+        tablesChanged();
+        if (orgGraph != null) {
+            orgGraph.employeeInserted(ename, dept_name);
+        }
+        if (employeeNames != null) {
+            employeeNames.added(ename);
+        }
+    }
+
+    // Single statement version of Transaction Code 1
+    // The foreign key on department.mname sets to null the manager of every department
+    // the employee managed, and a delete that removes no rows means the name was not found
+    public static void deleteEmployeeSingleStatement(Connection conn, String ename) {
+        try {
+            PreparedStatement deleteEmp = StatementCache.prepare(conn, DELETE_EMPLOYEE_SQL);
+            deleteEmp.setString(1, ename);
+
+            if (deleteEmp.executeUpdate() == 0) {
+                ResultSink.notFound("Not Found: " + ename);
+                return;
+            }
+            ResultSink.println("Deleted Employee: " + ename);
+            if (orgGraph != null) {
+                orgGraph.employeeDeleted(ename);
+            }
+            if (employeeNames != null) {
+                employeeNames.removed(ename);
+            }
+        } catch (SQLException sqle) {
+            LineStatus.fail();
+            ResultSink.println("Exception: " + sqle);
+            ResultSink.println("Error when attempting to delete the employee: " + ename);
+        }
+    }
+
+    // Single statement version of Transaction Code 2
+    // An insert that changes no rows ran into an existing employee of the same name
+    public static void insertEmployeeSingleStatement(Connection conn, String ename, String dept_name,
+                                                     String salary, String city) {
+        try {
+            PreparedStatement insertEmp = StatementCache.prepare(conn, INSERT_EMPLOYEE_IF_NEW_SQL);
+            insertEmp.setString(1, ename);
+            insertEmp.setString(2, dept_name);
+            insertEmp.setString(3, salary);
+            insertEmp.setString(4, city);
+
+            if (insertEmp.executeUpdate() == 0) {
+                ResultSink.duplicate("Duplicate Name: " + ename);
+                return;
+            }
+            ResultSink.println("Added Employee: " + ename + " " + dept_name + " " + salary + " " + city);
+            employeeInserted(ename, dept_name);
+        } catch (SQLException sqle) {
+            LineStatus.fail();
+            ResultSink.println("Exception: " + sqle);
+            ResultSink.println("Failed to insert new employee: " + ename + " " + dept_name
+                    + " " + salary + " " + city);
+        }
+    }
+
+    // Single statement version of Transaction Code 3
+    // The delete trigger on department sets to null the dept_name of its employees,
+    // and a delete that removes no rows means the department was not found
+    public static void deleteDepartmentSingleStatement(Connection conn, String dept_name) {
+        try {
+            PreparedStatement deleteDept = StatementCache.prepare(conn, DELETE_DEPARTMENT_SQL);
+            deleteDept.setString(1, dept_name);
+
+            if (deleteDept.executeUpdate() == 0) {
+                ResultSink.notFound("Not Found: " + dept_name);
+                return;
+            }
+            ResultSink.println("Deleted: " + dept_name + " Department");
+            if (orgGraph != null) {
+                orgGraph.departmentDeleted(dept_name);
+            }
+            if (departmentNames != null) {
+                departmentNames.removed(dept_name);
+            }
+        } catch (SQLException sqle) {
+            LineStatus.fail();
+            ResultSink.println("Exception: " + sqle);
+            ResultSink.println("Error when attempting to delete department: " + dept_name);
+        }
+    }
+
+    // Single statement version of Transaction Code 4
+    // The foreign key on mname rejects a manager that is not an employee, and the
+    // upsert replaces an existing department of the same name in place. MySQL counts
+    // 1 row for a new department, and 2 (or 0 if nothing changed) for a replaced one
+    public static void insertDepartmentSingleStatement(Connection conn, String dept_name, String mname) {
+        try {
+            PreparedStatement upsertDept = StatementCache.prepare(conn, UPSERT_DEPARTMENT_SQL);
+            upsertDept.setString(1, dept_name);
+            upsertDept.setString(2, mname);
+
+            if (upsertDept.executeUpdate() != 1) {
+                ResultSink.println("Department already exists, deleting: " + dept_name);
+            }
+            ResultSink.println("Added department: " + dept_name + " " + mname);
+            if (orgGraph != null) {
+                orgGraph.departmentInserted(dept_name, mname);
+            }
+            if (departmentNames != null) {
+                departmentNames.added(dept_name);
+            }
+        } catch (SQLException sqle) {
+            if (sqle.getErrorCode() == NO_REFERENCED_ROW_ERROR) {
+                ResultSink.notFound("Manager name does not exist: " + mname);
+                return;
+            }
+            LineStatus.fail();
+            ResultSink.println("Error inserting the department, Exception: " + sqle);
+        }
     }
 
     // Helper method for Transaction Code 5
@@ -341,9 +539,8 @@ public class JDBCProject {
 
         // Check if the given managerName manages any departments,
         // otherwise, just return null for the set of employees under them
-        try(PreparedStatement managerExists =
-                    conn.prepareStatement("Select count(*) from department where mname = ?");
-        ) {
+        try {
+            PreparedStatement managerExists = StatementCache.prepare(conn, COUNT_MANAGED_DEPARTMENTS_SQL);
             managerExists.setString(1, managerName);
 
             ResultSet rs = managerExists.executeQuery();
@@ -355,9 +552,8 @@ public class JDBCProject {
             }
 
             // Get all the departments managed by the manager
-            try(PreparedStatement getDeptsUnderManager =
-                        conn.prepareStatement("select dept_name from department where mname = ?;");
-            ) {
+            try {
+                PreparedStatement getDeptsUnderManager = StatementCache.prepare(conn, SELECT_MANAGED_DEPARTMENTS_SQL);
                 getDeptsUnderManager.setString(1, managerName);
 
                 // All the departments under this manager
@@ -368,9 +564,8 @@ public class JDBCProject {
                     String currDept = deptsUnderManager.getString(1);
 
                     // Get all the employees in currDept -> directly under the manager
-                    try(PreparedStatement getEmps =
-                                conn.prepareStatement("select ename from employee where dept_name = ?;");
-                    ) {
+                    try {
+                        PreparedStatement getEmps = StatementCache.prepare(conn, SELECT_DEPARTMENT_EMPLOYEES_SQL);
                         getEmps.setString(1, currDept);
 
                         ResultSet directEmployees = getEmps.executeQuery();
@@ -379,44 +574,28 @@ public class JDBCProject {
                             String currEmployee = directEmployees.getString(1);
                             employees.add(currEmployee);
                         }
-                    } catch (SQLException sqle) { System.out.println("Exception: " + sqle); }
+                    } catch (SQLException sqle) { LineStatus.fail(); ResultSink.println("Exception: " + sqle); }
                 }
-            } catch (SQLException sqle) { System.out.println("Exception: " + sqle); }
-        } catch (SQLException sqle) { System.out.println("Exception: " + sqle); }
+            } catch (SQLException sqle) { LineStatus.fail(); ResultSink.println("Exception: " + sqle); }
+        } catch (SQLException sqle) { LineStatus.fail(); ResultSink.println("Exception: " + sqle); }
 
         // Return the set containing all the employees under the manager
         return employees;
     }
 
-    // Method for Transaction Code 5
-    // Prints "All employees directly and indirectly under (name of the manager):"
-    // and then the tab indented list of all employees with each on a new line
+    // Helper method for Transaction Code 5
+    // Finds every employee directly and indirectly under mname with a breadth first
+    // search, running the department and employee queries for each subordinate
     // Handles keeping track of employees and already accounted for employees via
-    // a HashSet and Queue.
-    public static void listEmployeesUnder(Connection conn, String insertString) {
-        String[] stringArgs = insertString.split(" ");
+    // a HashSet and Queue. Returns null if mname does not manage any department
+    public static HashSet<String> findEmployeesUnderBfs(Connection conn, String mname) {
         // The set of employees working directly and indirectly under mname
         HashSet<String> employees = new HashSet<>();
 
-        // Input line should only have the transaction code and manager name
-        if (stringArgs.length > 2) {
-            System.out.println("Line has too many arguments, line should be of the form:\n\t" +
-                    "5 mname");
-            return;
-        }
-        if (stringArgs.length < 2) {
-            System.out.println("Line has too few arguments, line should be of the form:\n\t" +
-                    "5 mname");
-            return;
-        }
-        String transcode = stringArgs[0];
-        String mname = stringArgs[1];
-
         // Check if the manager manages at least one department in department,
         // otherwise do not execute the statement
-        try(PreparedStatement managerExists =
-                    conn.prepareStatement("Select count(*) from department where mname = ?");
-        ) {
+        try {
+            PreparedStatement managerExists = StatementCache.prepare(conn, COUNT_MANAGED_DEPARTMENTS_SQL);
             managerExists.setString(1, mname);
 
             ResultSet rs = managerExists.executeQuery();
@@ -425,26 +604,27 @@ public class JDBCProject {
             int resultInt = rs.getInt(1);
             // If there are no departments managed by the manager, return
             if (resultInt == 0) {
-                System.out.println("No department managed by the given name: " + mname);
-                return;
+                return null;
             }
 
             // Get all the departments managed by mname
-            try(PreparedStatement getDeptsUnderManager =
-                        conn.prepareStatement("select dept_name from department where mname = ?;");
-            ) {
+            try {
+                PreparedStatement getDeptsUnderManager = StatementCache.prepare(conn, SELECT_MANAGED_DEPARTMENTS_SQL);
                 getDeptsUnderManager.setString(1, mname);
 
                 // The departments managed by mname
+                // Read them all up front, because the cached statement is executed
+                // again by getEmployeesUnder, which would close this result set
                 ResultSet deptsUnderManager = getDeptsUnderManager.executeQuery();
-
+                List<String> managedDepts = new ArrayList<>();
                 while(deptsUnderManager.next()) {
-                    // One of the departments managed by mname
-                    String currDept = deptsUnderManager.getString(1);
+                    managedDepts.add(deptsUnderManager.getString(1));
+                }
+
+                for (String currDept : managedDepts) {
                     // Get all the employees in currDept -> directly under mname
-                    try(PreparedStatement getEmps =
-                                conn.prepareStatement("select ename from employee where dept_name = ?;");
-                    ) {
+                    try {
+                        PreparedStatement getEmps = StatementCache.prepare(conn, SELECT_DEPARTMENT_EMPLOYEES_SQL);
                         getEmps.setString(1, currDept);
 
                         ResultSet directEmployees = getEmps.executeQuery();
@@ -482,23 +662,169 @@ public class JDBCProject {
                             }
                         }
 
-                    } catch (SQLException sqle) { System.out.println("Exception: " + sqle); }
+                    } catch (SQLException sqle) { LineStatus.fail(); ResultSink.println("Exception: " + sqle); }
+                }
+            } catch (SQLException sqle) { LineStatus.fail(); ResultSink.println("Exception: " + sqle); }
+        } catch (SQLException sqle) { LineStatus.fail(); ResultSink.println("Exception: " + sqle); }
+
+        return employees;
+    }
+
+    // Helper method for Transaction Code 5
+    // Finds every employee directly and indirectly under mname in a single round-trip
+    // The recursive query walks department.mname -> employee.dept_name on the server
+    // UNION (rather than UNION ALL) drops employees that were already found, so a
+    // cycle in the hierarchy ends the recursion instead of repeating forever
+    // Returns null if mname does not manage any department
+    public static HashSet<String> findEmployeesUnderRecursive(Connection conn, String mname) {
+        HashSet<String> employees = new HashSet<>();
+        boolean managesDepartment = false;
+        try {
+            PreparedStatement subordinates = StatementCache.prepare(conn, SELECT_ALL_SUBORDINATES_SQL);
+            subordinates.setString(1, mname);
+            subordinates.setString(2, mname);
+
+            // The first row says whether mname manages any department at all,
+            // every other row is one subordinate
+            ResultSet rs = subordinates.executeQuery();
+            while (rs.next()) {
+                if (rs.getInt(1) == 0) {
+                    managesDepartment = true;
+                } else {
+                    employees.add(rs.getString(2));
                 }
-            } catch (SQLException sqle) { System.out.println("Exception: " + sqle); }
-        } catch (SQLException sqle) { System.out.println("Exception: " + sqle); }
+            }
+        } catch (SQLException sqle) {
+            LineStatus.fail();
+            ResultSink.println("Exception: " + sqle);
+            return employees;
+        }
+        return managesDepartment ? employees : null;
+    }
+
+    // Helper method for Transaction Code 5
+    // Finds every employee directly and indirectly under mname from the org graph,
+    // which is only loaded from the database if it is out of date
+    // Returns null if mname does not manage any department
+    public static HashSet<String> findEmployeesUnderInGraph(Connection conn, String mname) {
+        try {
+            return orgGraph.findEmployeesUnder(conn, mname);
+        } catch (SQLException sqle) {
+            LineStatus.fail();
+            ResultSink.println("Error loading the org graph, Exception: " + sqle);
+            return new HashSet<>();
+        }
+    }
+
+    // Helper method for Transaction Code 5
+    // Used when both hierarchy engines are run, prints the difference if they did not
+    // find the same set of subordinates
+    private static void compareHierarchyEngines(String mname, HashSet<String> bfs, HashSet<String> recursive) {
+        if (Objects.equals(bfs, recursive)) {
+            return;
+        }
+        ResultSink.println("Hierarchy engines disagree for " + mname + ": bfs found " + bfs
+                + ", recursive query found " + recursive);
+    }
+
+    // Method for Transaction Code 5
+    // Prints "All employees directly and indirectly under (name of the manager):"
+    // and then the tab indented list of all employees with each on a new line
+    // The subordinates are found with the engine chosen by hierarchyEngine, either
+    // the breadth first search in Java, or one recursive query on the server
+    public static void listEmployeesUnder(Connection conn, String mname) {
+        // Write the subordinates as they are read, instead of collecting them first
+        if (orgGraph == null && streamRows > 0) {
+            streamEmployeesUnder(conn, mname);
+            return;
+        }
+
+        // The set of employees working directly and indirectly under mname
+        // Answered from the in-memory org graph when it is enabled
+        HashSet<String> employees;
+        if (orgGraph != null) {
+            employees = findEmployeesUnderInGraph(conn, mname);
+        } else {
+            switch (hierarchyEngine) {
+                case CTE:
+                    employees = findEmployeesUnderRecursive(conn, mname);
+                    break;
+                case COMPARE:
+                    employees = findEmployeesUnderBfs(conn, mname);
+                    compareHierarchyEngines(mname, employees, findEmployeesUnderRecursive(conn, mname));
+                    break;
+                default:
+                    employees = findEmployeesUnderBfs(conn, mname);
+            }
+        }
+
+        // If there are no departments managed by the manager, return
+        if (employees == null) {
+            ResultSink.notFound("No department managed by the given name: " + mname);
+            return;
+        }
 
         // Remove mname, as a manager is not under themself
         employees.remove(mname);
 
         // If all the departments managed by mname contain only mname as their sole employee
         if (employees.isEmpty()) {
-            System.out.println("No employees directly or indirectly under " + mname);
+            ResultSink.println("No employees directly or indirectly under " + mname);
         }
 
         // Print the tab indented name of every employee directly and indirectly under mname
-        System.out.println("All employees directly and indirectly under " + mname + ":");
+        ResultSink.println("All employees directly and indirectly under " + mname + ":");
         for (String emp : employees) {
-            System.out.println("\t" + emp);
+            ResultSink.row(emp);
+        }
+    }
+
+    // Method for Transaction Code 5 when the results are streamed
+    // Prints the same as listEmployeesUnder, but writes every subordinate as it is
+    // fetched from the recursive query, streamRows rows at a time through a cursor.
+    // The query already drops the employees it has found before, on the server, so
+    // nothing is kept here however many employees are under mname. Only the header
+    // waits, until the first subordinate (or the end of them) shows if there are any
+    public static void streamEmployeesUnder(Connection conn, String mname) {
+        try {
+            PreparedStatement managerExists = StatementCache.prepare(conn, COUNT_MANAGED_DEPARTMENTS_SQL);
+            managerExists.setString(1, mname);
+
+            ResultSet rs = managerExists.executeQuery();
+            rs.next();
+            // If there are no departments managed by the manager, return
+            if (rs.getInt(1) == 0) {
+                ResultSink.notFound("No department managed by the given name: " + mname);
+                return;
+            }
+
+            PreparedStatement subordinates = StatementCache.prepare(conn, STREAM_ALL_SUBORDINATES_SQL);
+            subordinates.setFetchSize(streamRows);
+            subordinates.setString(1, mname);
+            boolean foundAny = false;
+            try (ResultSet employees = subordinates.executeQuery()) {
+                while (employees.next()) {
+                    String emp = employees.getString(1);
+                    // A manager is not under themself, even if the hierarchy loops back to them
+                    if (emp.equals(mname)) {
+                        continue;
+                    }
+                    if (!foundAny) {
+                        ResultSink.println("All employees directly and indirectly under " + mname + ":");
+                        foundAny = true;
+                    }
+                    ResultSink.row(emp);
+                }
+            }
+
+            // If all the departments managed by mname contain only mname as their sole employee
+            if (!foundAny) {
+                ResultSink.println("No employees directly or indirectly under " + mname);
+                ResultSink.println("All employees directly and indirectly under " + mname + ":");
+            }
+        } catch (SQLException sqle) {
+            LineStatus.fail();
+            ResultSink.println("Exception: " + sqle);
         }
     }
 
@@ -507,28 +833,30 @@ public class JDBCProject {
     // and then the tab indented list of all departments with each on a new line
     // If there are no departments managed by the given employee, or if the employee
     // does not exist, it will tell you the error, and not execute the statement
-    public static void listDepartments(Connection conn, String managerName) {
-        String[] stringArgs = managerName.split(" ");
-
-        // The input line should only have the transcode, and manager name
-        if (stringArgs.length > 2) {
-            System.out.println("Line has too many arguments, line should be of the form:\n\t" +
-                    "5 mname");
-            return;
-        }
-        if (stringArgs.length < 2) {
-            System.out.println("Line has too few arguments, line should be of the form:\n\t" +
-                    "5 mname");
+    public static void listDepartments(Connection conn, String mname) {
+        // Answer from the in-memory org graph when it is enabled
+        if (orgGraph != null) {
+            try {
+                List<String> departments = orgGraph.findDepartmentsManagedBy(conn, mname);
+                if (departments == null) {
+                    ResultSink.notFound("No department managed by the given name: " + mname);
+                    return;
+                }
+                ResultSink.println("All of the departments managed by " + mname + ":");
+                for (String currDept : departments) {
+                    ResultSink.row(currDept);
+                }
+            } catch (SQLException sqle) {
+                LineStatus.fail();
+                ResultSink.println("Error loading the org graph, Exception: " + sqle);
+            }
             return;
         }
-        String transcode = stringArgs[0];
-        String mname = stringArgs[1];
 
         // Check that the manager name actually exists as the head of some department
         // This also handles the case where there is no such employee by that name in employee
-        try(PreparedStatement managerExists =
-                    conn.prepareStatement("Select count(*) from department where mname = ?");
-        ) {
+        try {
+            PreparedStatement managerExists = StatementCache.prepare(conn, COUNT_MANAGED_DEPARTMENTS_SQL);
             managerExists.setString(1, mname);
 
             // Get the number of instances of the manager name in department
@@ -537,16 +865,19 @@ public class JDBCProject {
             int resultInt = rs.getInt(1);
             // If there is no such manager in department, return and dont execute the statement
             if (resultInt == 0) {
-                System.out.println("No department managed by the given name: " + mname);
+                ResultSink.notFound("No department managed by the given name: " + mname);
                 return;
             }
-            System.out.println("All of the departments managed by " + mname + ":");
+            ResultSink.println("All of the departments managed by " + mname + ":");
 
             // Get all the departments managed by mname
-            try(PreparedStatement getDeptsUnderManager =
-                        conn.prepareStatement("select dept_name from department where mname = ?;");
-            ) {
+            try {
+                PreparedStatement getDeptsUnderManager = StatementCache.prepare(conn, SELECT_MANAGED_DEPARTMENTS_SQL);
                 getDeptsUnderManager.setString(1, mname);
+                // Fetch the departments through a cursor when the results are streamed
+                if (streamRows > 0) {
+                    getDeptsUnderManager.setFetchSize(streamRows);
+                }
 
                 ResultSet deptsUnderManager = getDeptsUnderManager.executeQuery();
 
@@ -555,10 +886,16 @@ public class JDBCProject {
                 while(deptsUnderManager.next()) {
                     // One of the departments managed by mname
                     String currDept = deptsUnderManager.getString(1);
-                    System.out.println("\t" + currDept);
+                    ResultSink.row(currDept);
                 }
-            } catch (SQLException sqle) { System.out.println("Error when getting departments, Exception: " + sqle); }
-        } catch (SQLException sqle) { System.out.println("Error checking departments for a mname, Exception: " + sqle); }
+            } catch (SQLException sqle) {
+                LineStatus.fail();
+                ResultSink.println("Error when getting departments, Exception: " + sqle);
+            }
+        } catch (SQLException sqle) {
+            LineStatus.fail();
+            ResultSink.println("Error checking departments for a mname, Exception: " + sqle);
+        }
     }
 
     // Method to drop the department and employee tables of the given database
@@ -581,25 +918,729 @@ public class JDBCProject {
         }
     }
 
+    // Method to delete every row of the department and employee tables, but keep the
+    // tables themselves, at the end of a fast start run, so the next one can use them
+    // again without creating them
+    public static void emptyAllTables(Connection conn) {
+        try (Statement stmt = conn.createStatement()) {
+            System.out.println("Emptying Employee and Department tables, keeping them for the next run");
+            // Departments first, as they reference their managers
+            stmt.executeUpdate("delete from department");
+            stmt.executeUpdate("delete from employee");
+        } catch (SQLException sqle) {
+            System.out.println("Exception: " + sqle);
+            System.out.println("Failed to empty the tables, database may need manual cleaning");
+        }
+    }
+
+    // Validates a single line of the transfile and executes it based on its
+    // transaction code, printing the result or the reason it was skipped
+    public static void processLine(Connection conn, String currLine) {
+        processLine(conn, TransfileLine.of(currLine));
+    }
+
+    // Validates and executes a line already split into fields by a TransfileReader
+    public static void processLine(Connection conn, TransfileLine currLine) {
+        ResultSink.write(processLineForResult(conn, currLine));
+    }
+
+    // Validates and executes a line, and returns what it reported instead of writing
+    // it out, for callers that write the results in their own order
+    public static LineResult processLineForResult(Connection conn, TransfileLine currLine) {
+        return processLineForResult(new JdbcBackend(conn), currLine);
+    }
+
+    // Validates a line and runs it on the given backend, and returns what it reported
+    public static LineResult processLineForResult(TransactionBackend backend, TransfileLine currLine) {
+        return resultOf(currLine.number(), () -> runLine(backend, currLine));
+    }
+
+    // Runs a line of a compiled transfile on the given backend, and returns what it reported
+    public static LineResult processCompiledForResult(TransactionBackend backend, CompiledTransfile.Line currLine) {
+        return resultOf(currLine.number(), () -> runCompiled(backend, currLine));
+    }
+
+    // Helper to collect what a line reports while run runs it, and to time it if
+    // metrics are enabled. run returns the transaction code of the line
+    private static LineResult resultOf(long lineNumber, IntSupplier run) {
+        ResultSink.begin(lineNumber);
+        int transcode;
+        try {
+            if (!Metrics.isEnabled()) {
+                transcode = run.getAsInt();
+            } else {
+                // Time the line, and count it under its transaction code
+                long start = System.nanoTime();
+                transcode = run.getAsInt();
+                Metrics.lineFinished(transcode, System.nanoTime() - start);
+            }
+        } catch (RuntimeException re) {
+            // Stop collecting, so a failed line never leaves its result behind on the thread
+            ResultSink.end(0);
+            throw re;
+        }
+        return ResultSink.end(transcode);
+    }
+
+    // Helper for processLine that checks the form of the line, and then runs it
+    // through the backend method of its code
+    // Returns the transaction code of the line, or 0 if it did not have a valid one
+    static int runLine(TransactionBackend backend, TransfileLine currLine) {
+        LineStatus.reset();
+
+        // If a line is blank (only a newline character), just skip it
+        if (currLine.length() < 1) {
+            ResultSink.invalid("Line was blank, skipping");
+            return 0;
+        }
+
+        // Check that the first character is a valid transaction code
+        char transCodeChar = currLine.firstChar();
+        if (Character.isDigit(transCodeChar) == false) {
+            ResultSink.invalid("Invalid Transaction Code, first char of line was not a number");
+            return 0;
+        }
+        int transcode = Character.getNumericValue(transCodeChar);
+        if (transcode < 1 || transcode > 6) {
+            ResultSink.invalid("Invalid Transaction Code, code must be a number between 1-6");
+            return 0;
+        }
+
+        // Check that the line has the right arguments for its code
+        String problem = LineValidator.argumentProblem(currLine, transcode);
+        if (problem != null) {
+            ResultSink.invalid(problem);
+            return transcode;
+        }
+
+        // Execute each statement based on the number given
+        switch (transcode) {
+            case 1:
+                backend.deleteEmployee(currLine.field(1));
+                break;
+            case 2:
+                backend.insertEmployee(currLine.field(1), currLine.field(2), currLine.field(3), currLine.field(4));
+                break;
+            case 3:
+                backend.deleteDepartment(currLine.field(1));
+                break;
+            case 4:
+                backend.insertDepartment(currLine.field(1), currLine.field(2));
+                break;
+            case 5:
+                backend.listEmployeesUnder(currLine.field(1));
+                break;
+            case 6:
+                backend.listDepartments(currLine.field(1));
+                break;
+        }
+
+        // If a line that changes the tables failed part way, the client side copies
+        // can no longer tell which of its statements took effect, so forget them
+        if (transcode <= 4 && LineStatus.failed()) {
+            invalidateClientCopies();
+        }
+        return transcode;
+    }
+
+    // Helper for processCompiledForResult that runs a line of a compiled transfile
+    // through the backend method of its code. The line was already checked when it
+    // was compiled, so a malformed line only reports what it was rejected with
+    static int runCompiled(TransactionBackend backend, CompiledTransfile.Line currLine) {
+        LineStatus.reset();
+        if (currLine.problem != null) {
+            ResultSink.invalid(currLine.problem);
+            return currLine.code;
+        }
+
+        String[] args = currLine.args;
+        switch (currLine.code) {
+            case 1:
+                backend.deleteEmployee(args[0]);
+                break;
+            case 2:
+                backend.insertEmployee(args[0], args[1], args[2], args[3]);
+                break;
+            case 3:
+                backend.deleteDepartment(args[0]);
+                break;
+            case 4:
+                backend.insertDepartment(args[0], args[1]);
+                break;
+            case 5:
+                backend.listEmployeesUnder(args[0]);
+                break;
+            case 6:
+                backend.listDepartments(args[0]);
+                break;
+        }
+
+        // The same as runLine, forget the client side copies after a failed write
+        if (currLine.code <= 4 && LineStatus.failed()) {
+            invalidateClientCopies();
+        }
+        return currLine.code;
+    }
+
+    // Drops what the org graph and the existence caches know about the tables, after
+    // changes to the tables may have been rolled back or left half done
+    static void invalidateClientCopies() {
+        if (orgGraph != null) {
+            orgGraph.invalidate();
+        }
+        if (employeeNames != null) {
+            employeeNames.invalidate();
+        }
+        if (departmentNames != null) {
+            departmentNames.invalidate();
+        }
+    }
+
+    // Applies the options that change how the handlers run every line
+    // Called by main before any line is processed
+    public static void configure(RunOptions options) {
+        hierarchyEngine = options.hierarchyEngine;
+        singleStatement = options.singleStatement;
+        orgGraph = options.orgGraph ? new OrgGraph() : null;
+        streamRows = options.streamRows;
+        ResultSink.streamRows(options.streamRows);
+        employeeNames = options.existenceCache ? new ExistenceCache("employee", "ename") : null;
+        departmentNames = options.existenceCache ? new ExistenceCache("department", "dept_name") : null;
+        if (options.metrics) {
+            Metrics.enable();
+        }
+    }
+
+    // Helper for main to list the transfiles to process
+    // A directory gives every file in it, in order of their names
+    private static List<Path> findTransfiles(String transfile) throws IOException {
+        Path path = Paths.get(transfile);
+        if (!Files.isDirectory(path)) {
+            return List.of(path);
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    // Helper for main to process every line of one transfile
+    // A checkpointed run starts from the line after the last commit of an earlier
+    // run, and skips the file if an earlier run already finished it
+    private static void processTransfile(Connection conn, ConnectionPool pool, RunOptions options, Path transfile)
+            throws IOException, SQLException {
+        if (CompiledTransfile.isCompiled(transfile)) {
+            reportIgnoredForReplay(options, pool != null);
+            replayTransfile(conn, options, transfile);
+            return;
+        }
+
+        Checkpoint checkpoint = null;
+        if (options.checkpoint && pool == null) {
+            checkpoint = Checkpoint.load(conn, transfile);
+            if (checkpoint.isChanged()) {
+                ResultSink.println(transfile + " has changed since its checkpoint was saved, running it from the start");
+            }
+            if (checkpoint.isFinished()) {
+                ResultSink.println("Already processed " + transfile + ", skipping it");
+                return;
+            }
+        }
+
+        if (options.follow) {
+            followTransfile(conn, pool, options, transfile, checkpoint);
+            return;
+        }
+
+        // Check every result against the in-memory tables, if comparing the backends
+        DifferentialChecker checker = null;
+        if (compareBackend != null) {
+            checker = new DifferentialChecker(transfile, compareBackend);
+            ResultSink.checkWith(checker);
+        }
+        try (TransfileReader in = new TransfileReader(transfile.toString())) {
+            if (checkpoint != null && checkpoint.getNextLine() > 1) {
+                in.seek(checkpoint.getNextOffset(), checkpoint.getNextLine() - 1);
+                ResultSink.println("Resuming " + transfile + " from line " + checkpoint.getNextLine());
+            }
+
+            TransfileProcessor processor = openProcessor(conn, pool, options, checkpoint);
+
+            // Read each line of the transfile
+            // The same TransfileLine is reused for every line that is read
+            TransfileLine currLine = new TransfileLine();
+            while(in.next(currLine)) {
+                processor.process(currLine);
+            }
+            processor.finish();
+        } finally {
+            if (checker != null) {
+                ResultSink.checkWith(null);
+                checker.close();
+            }
+        }
+    }
+
+    // Helper for processTransfile to say which options a compiled transfile is run
+    // without, since it is always replayed one line after the other
+    // With more than one thread, the options that need one thread were already reported
+    private static void reportIgnoredForReplay(RunOptions options, boolean parallel) {
+        if (parallel) {
+            ResultSink.println("--threads is ignored for a compiled transfile");
+        } else {
+            reportIgnoredForSequentialReplay(options);
+        }
+        if (options.follow) {
+            ResultSink.println("--follow is ignored for a compiled transfile");
+        }
+        if (compareBackend != null) {
+            ResultSink.println("--backend=compare is ignored for a compiled transfile");
+        }
+    }
+
+    private static void reportIgnoredForSequentialReplay(RunOptions options) {
+        if (options.batchSize > 0) {
+            ResultSink.println("--batch-size is ignored for a compiled transfile");
+        }
+        if (options.bulkLoadRunLength > 0) {
+            ResultSink.println("--bulk-load is ignored for a compiled transfile");
+        }
+        if (options.pipeline) {
+            ResultSink.println("--pipeline is ignored for a compiled transfile");
+        }
+        if (options.writeWindow > 0) {
+            ResultSink.println("--write-window is ignored for a compiled transfile");
+        }
+        if (options.checkpoint) {
+            ResultSink.println("--checkpoint is ignored for a compiled transfile");
+        }
+    }
+
+    // Helper for processTransfile to run a compiled transfile, one line after the
+    // other on this connection, committed in groups if a commit limit was given
+    // The options that batch, pipeline, or checkpoint the lines of a text transfile
+    // do not apply to a replay
+    private static void replayTransfile(Connection conn, RunOptions options, Path transfile) throws IOException {
+        ResultSink.println("Replaying the compiled transfile " + transfile);
+        TransactionGroup group = null;
+        if (options.commitLines > 0 || options.commitMillis > 0) {
+            try {
+                group = new TransactionGroup(conn, options.commitLines, options.commitMillis);
+            } catch (SQLException sqle) {
+                ResultSink.println("Exception: " + sqle);
+                ResultSink.println("Failed to turn off autocommit, every line will be committed on its own");
+            }
+        }
+        TransactionBackend backend = new JdbcBackend(conn);
+        try (CompiledTransfile.Reader in = new CompiledTransfile.Reader(transfile)) {
+            CompiledTransfile.Line currLine = new CompiledTransfile.Line();
+            while (in.next(currLine)) {
+                if (group != null) {
+                    group.runLine(currLine, () -> ResultSink.write(processCompiledForResult(backend, currLine)));
+                } else {
+                    ResultSink.write(processCompiledForResult(backend, currLine));
+                }
+            }
+        } finally {
+            if (group != null) {
+                group.finish();
+            }
+        }
+    }
+
+    // Helper to run every line of a transfile, text or compiled, on the given
+    // backend in order, for the runs that do not go through a TransfileProcessor
+    // Returns the number of lines run
+    private static long runTransfile(TransactionBackend backend, Path transfile) throws IOException {
+        long lines = 0;
+        if (CompiledTransfile.isCompiled(transfile)) {
+            try (CompiledTransfile.Reader in = new CompiledTransfile.Reader(transfile)) {
+                CompiledTransfile.Line currLine = new CompiledTransfile.Line();
+                while (in.next(currLine)) {
+                    ResultSink.write(processCompiledForResult(backend, currLine));
+                    lines++;
+                }
+            }
+            return lines;
+        }
+        try (TransfileReader in = new TransfileReader(transfile.toString())) {
+            TransfileLine currLine = new TransfileLine();
+            while (in.next(currLine)) {
+                ResultSink.write(processLineForResult(backend, currLine));
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    // Helper for processTransfile to keep following a transfile as lines are appended
+    // to it, until the run is stopped. Whatever was held back is applied each time
+    // the file goes idle, so every line is applied within milliseconds of being
+    // written, while a burst of lines is still batched and committed together
+    private static void followTransfile(Connection conn, ConnectionPool pool, RunOptions options, Path transfile,
+                                        Checkpoint checkpoint) throws IOException {
+        if (checkpoint != null) {
+            checkpoint.followed();
+        }
+        try (TransfileFollower follower = new TransfileFollower(transfile)) {
+            if (checkpoint != null && checkpoint.getNextLine() > 1) {
+                follower.seek(checkpoint.getNextOffset(), checkpoint.getNextLine() - 1);
+                ResultSink.println("Resuming " + transfile + " from line " + checkpoint.getNextLine());
+            }
+            ResultSink.println("Following " + transfile + ", stop the run to finish");
+
+            TransfileProcessor processor = openProcessor(conn, pool, options, checkpoint);
+            TransfileLine currLine = new TransfileLine();
+            while (follower.next(currLine, processor::flush)) {
+                processor.process(currLine);
+            }
+            processor.finish();
+        }
+    }
+
+    // Helper to pick how the lines of a transfile are processed
+    // Runs the lines in parallel over the pool if more than one thread was asked for,
+    // otherwise one after the other on this connection, with reading and checking
+    // the lines on their own threads if the pipeline was asked for, or through a
+    // WriteWindow if one was asked for
+    private static TransfileProcessor openProcessor(Connection conn, ConnectionPool pool, RunOptions options,
+                                                    Checkpoint checkpoint) {
+        if (pool != null) {
+            return new ParallelTransfileProcessor(pool);
+        } else if (options.pipeline) {
+            return new PipelinedTransfileProcessor(conn, options, checkpoint);
+        }
+        SequentialTransfileProcessor processor = new SequentialTransfileProcessor(conn, options, checkpoint);
+        if (options.writeWindow > 0) {
+            boolean holdsInserts = options.batchSize > 0 || options.bulkLoadRunLength > 0;
+            return new WriteWindow(conn, processor, options.writeWindow, holdsInserts);
+        }
+        return processor;
+    }
+
+    // Runs every transfile on the InMemoryBackend instead of MySQL, for --backend=memory
+    // Nothing is read from or written to a database, so no credentials are asked for
+    private static void runInMemory(RunOptions options) {
+        InMemoryBackend backend = new InMemoryBackend();
+        long lines = 0;
+        long start = System.nanoTime();
+        try {
+            ResultSink.open(options.outputFormat, options.outputFile);
+            if (options.metricsIntervalSeconds > 0) {
+                Metrics.startPeriodicReport(options.metricsIntervalSeconds);
+            }
+            boolean directory = Files.isDirectory(Paths.get(options.transfile));
+            for (Path transfile : findTransfiles(options.transfile)) {
+                if (directory) {
+                    ResultSink.println("Processing " + transfile);
+                }
+                lines += runTransfile(backend, transfile);
+            }
+            Metrics.stopPeriodicReport();
+            ResultSink.close();
+
+            long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            System.out.println(String.format("Ran %d lines in memory in %d ms (%d lines per second), " +
+                            "leaving %d employees and %d departments", lines, millis, lines * 1000 / millis,
+                    backend.employeeCount(), backend.departmentCount()));
+            if (options.metrics) {
+                System.out.println(Metrics.summaryTable());
+            }
+            if (options.metricsFile != null) {
+                writeMetricsFile(options.metricsFile);
+            }
+        } catch (IOException ioe) {
+            ResultSink.close();
+            System.out.println("Exception: " + ioe);
+            System.out.println("Could not open the file, make sure it is in the root directory");
+            System.exit(-1);
+        }
+        System.out.println("\nProgram ran successfully, now exiting");
+    }
+
+    // Compiles the transfile into the file given by --compile, without running it
+    // Nothing is read from or written to a database, so no credentials are asked for
+    private static void compileTransfile(RunOptions options) {
+        Path transfile = Paths.get(options.transfile);
+        try {
+            if (Files.isDirectory(transfile) || CompiledTransfile.isCompiled(transfile)) {
+                System.out.println("--compile needs a single text transfile: " + transfile);
+                System.exit(-1);
+            }
+            long start = System.nanoTime();
+            System.out.println(CompiledTransfile.compile(transfile, Paths.get(options.compileTo)));
+            System.out.println("Compiled in " + (System.nanoTime() - start) / 1_000_000 + " ms, run it with " +
+                    "--transfile=" + options.compileTo);
+        } catch (IOException ioe) {
+            System.out.println("Exception: " + ioe);
+            System.out.println("Could not compile the file, make sure it is in the root directory");
+            System.exit(-1);
+        }
+        System.out.println("\nProgram ran successfully, now exiting");
+    }
+
+    // Helper to turn a database name on localhost, or a whole connection string for a
+    // database elsewhere, into a connection string
+    static String connectionUrl(String target) {
+        return target.startsWith("jdbc:") ? target : "jdbc:mysql://localhost:3306/" + target;
+    }
+
+    // Helper to add a property to a connection string, after a ? if it has none yet
+    static String withProperty(String connectionString, String property) {
+        return connectionString + (connectionString.contains("?") ? "&" : "?") + property;
+    }
+
+    // Helper for main to have codes 5 and 6 read their results whole, where
+    // streaming them does not apply
+    private static void stopStreaming() {
+        streamRows = 0;
+        ResultSink.streamRows(0);
+    }
+
+    // Helper for main to take a setting that was given, or else to ask for it
+    // A fast start run never waits on the console, and stops instead
+    private static String settingOrAsk(Scanner in, String given, String prompt, String option, boolean fastStart) {
+        if (given != null) {
+            return given;
+        }
+        if (fastStart) {
+            System.out.println("--fast-start does not ask for anything, give " + option + ", set it in the " +
+                    "environment, or put it in " + RunOptions.DEFAULT_CONFIG_FILE);
+            System.exit(-1);
+        }
+        System.out.println(prompt);
+        return in.nextLine();
+    }
+
+    // Helper for main to print how long the run took to get going, JVM start included,
+    // if the operating system reports when the process started
+    private static void reportStartupTime() {
+        ProcessHandle.current().info().startInstant().ifPresent(started -> System.out.println(
+                "Ready for the first line " + Duration.between(started, Instant.now()).toMillis() +
+                        " ms after starting"));
+    }
+
+    // Helper to list the connection strings of the replicas
+    private static List<String> replicaUrls(RunOptions options) {
+        List<String> urls = new ArrayList<>();
+        for (String replica : options.replicas) {
+            urls.add(streamRows > 0 ? withProperty(connectionUrl(replica), "useCursorFetch=true")
+                    : connectionUrl(replica));
+        }
+        return urls;
+    }
+
+    // Runs every transfile on the tables split over the databases given by --shards
+    // Each shard is either a database name on localhost, or a whole connection string
+    // for a database on another server, all with the same userid and password
+    private static void runSharded(RunOptions options) {
+        Scanner dbInfo = new Scanner(System.in);
+        String userid = settingOrAsk(dbInfo, options.user, "Enter your user id:", "--user", options.fastStart);
+        String passwd = settingOrAsk(dbInfo, options.password, "Enter your password:", "--password",
+                options.fastStart);
+
+        List<Connection> shards = new ArrayList<>();
+        try {
+            for (String shard : options.shards) {
+                shards.add(DriverManager.getConnection(connectionUrl(shard), userid, passwd));
+                SchemaManager.ensureShardSchema(shards.get(shards.size() - 1));
+            }
+            System.out.println("Successfully opened " + shards.size() + " shards, departments are on " +
+                    options.shards.get(0));
+        } catch (SQLException sqle) {
+            System.out.println("Exception: " + sqle);
+            System.out.println("Make sure every shard names a database that exists, and that your " +
+                    "userid and password are correct on each of them");
+            for (Connection shard : shards) {
+                dropAllTables(shard);
+            }
+            System.exit(-1);
+        }
+
+        int exitCode = 0;
+        try (ShardedBackend backend = new ShardedBackend(shards)) {
+            ResultSink.open(options.outputFormat, options.outputFile);
+            if (options.metricsIntervalSeconds > 0) {
+                Metrics.startPeriodicReport(options.metricsIntervalSeconds);
+            }
+            boolean directory = Files.isDirectory(Paths.get(options.transfile));
+            for (Path transfile : findTransfiles(options.transfile)) {
+                if (directory) {
+                    ResultSink.println("Processing " + transfile);
+                }
+                runTransfile(backend, transfile);
+            }
+            Metrics.stopPeriodicReport();
+            ResultSink.close();
+
+            if (options.serverPreparedStatements || options.metrics) {
+                System.out.println(StatementCache.report());
+            }
+            if (options.metrics) {
+                System.out.println(Metrics.summaryTable());
+            }
+            if (options.metricsFile != null) {
+                writeMetricsFile(options.metricsFile);
+            }
+        } catch (IOException ioe) {
+            ResultSink.close();
+            System.out.println("Exception: " + ioe);
+            System.out.println("Could not open the file, make sure it is in the root directory");
+            exitCode = -1;
+        }
+
+        // Drop the tables of every shard, and close them
+        for (Connection shard : shards) {
+            StatementCache.close(shard);
+            dropAllTables(shard);
+            try {
+                shard.close();
+            } catch (SQLException sqle) {
+                System.out.println("Exception: " + sqle);
+            }
+        }
+        if (exitCode != 0) {
+            System.exit(exitCode);
+        }
+        System.out.println("\nProgram ran successfully, now exiting");
+    }
+
     public static void main(String[] args) {
+        // Options such as --batch-size=500 may be given on the command line
+        RunOptions options = RunOptions.parse(args);
+        configure(options);
+        if (options.compileTo != null) {
+            compileTransfile(options);
+            return;
+        }
+        if (options.backend == RunOptions.Backend.MEMORY) {
+            if (options.threads > 1 || options.batchSize > 0 || options.bulkLoadRunLength > 0 || options.pipeline
+                    || options.checkpoint || options.follow || options.writeWindow > 0 || options.streamRows > 0) {
+                System.out.println("Only the output and metrics options apply with --backend=memory, " +
+                        "every line is run in order in memory");
+            }
+            stopStreaming();
+            runInMemory(options);
+            return;
+        }
+        if (options.shards != null) {
+            if (options.threads > 1 || options.batchSize > 0 || options.bulkLoadRunLength > 0 || options.pipeline
+                    || options.checkpoint || options.follow || options.writeWindow > 0 || options.singleStatement
+                    || options.orgGraph || options.existenceCache || options.backend == RunOptions.Backend.COMPARE
+                    || options.streamRows > 0) {
+                System.out.println("Only the output and metrics options apply with --shards, " +
+                        "every line is run in order through the shards");
+            }
+            stopStreaming();
+            singleStatement = false;
+            orgGraph = null;
+            employeeNames = null;
+            departmentNames = null;
+            runSharded(options);
+            return;
+        }
+        if (options.follow && options.backend == RunOptions.Backend.COMPARE) {
+            System.out.println("--backend=compare is ignored with --follow");
+            options.backend = RunOptions.Backend.JDBC;
+        }
+        if (options.threads > 1 && options.batchSize > 0) {
+            System.out.println("--batch-size is ignored when running with more than one thread");
+        }
+        if (options.threads > 1 && options.checkpoint) {
+            System.out.println("--checkpoint is ignored when running with more than one thread");
+        }
+        if (options.threads > 1 && options.pipeline) {
+            System.out.println("--pipeline is ignored when running with more than one thread");
+        }
+        if (options.threads > 1 && options.bulkLoadRunLength > 0) {
+            System.out.println("--bulk-load is ignored when running with more than one thread");
+        }
+        if (options.threads > 1 && (options.commitLines > 0 || options.commitMillis > 0)) {
+            System.out.println("--commit-every and --commit-millis are ignored when running with more than one thread");
+        }
+        if (options.threads > 1 && options.writeWindow > 0) {
+            System.out.println("--write-window is ignored when running with more than one thread");
+        } else if (options.pipeline && options.writeWindow > 0) {
+            System.out.println("--write-window is ignored with --pipeline");
+        }
+        if (options.replicas != null && options.orgGraph) {
+            System.out.println("--replicas is ignored with --org-graph, which answers codes 5 and 6 in memory");
+            options.replicas = null;
+        }
+        if (options.streamRows > 0) {
+            if (options.threads > 1) {
+                System.out.println("--stream-rows is ignored when running with more than one thread");
+                stopStreaming();
+            } else if (options.orgGraph) {
+                System.out.println("--stream-rows is ignored with --org-graph, which answers codes 5 and 6 in memory");
+                stopStreaming();
+            } else if (options.backend == RunOptions.Backend.COMPARE) {
+                System.out.println("--stream-rows is ignored with --backend=compare, which checks whole results");
+                stopStreaming();
+            } else if (options.hierarchyEngine == RunOptions.HierarchyEngine.COMPARE) {
+                System.out.println("--hierarchy=compare is ignored with --stream-rows, which always streams " +
+                        "the recursive query");
+            }
+        }
+        if (options.readYourWrites && options.replicas == null) {
+            System.out.println("--read-your-writes only applies with --replicas");
+        }
+        if (options.existenceCache && options.singleStatement) {
+            System.out.println("--existence-cache has no effect with --single-statement, which never checks first");
+        }
+        if (options.follow && Files.isDirectory(Paths.get(options.transfile))) {
+            System.out.println("--follow is ignored for a directory of transfiles, give it a single transfile or named pipe");
+            options.follow = false;
+        }
+        // Stopping a followed run (Ctrl-C or kill) commits what was read and keeps the tables
+        if (options.follow) {
+            TransfileFollower.installShutdownHook();
+        }
+
         // Reads in the database, userid, and password from the command line
         // For me, database was "companyDB", userid was "root", and password was my password
 
+        // Nothing is asked for that was given as an option, in the environment, or in
+        // the config file
         Scanner dbInfo = new Scanner(System.in);
-        System.out.println("Enter the name of the database:");
-        String dbid = dbInfo.nextLine();
-        System.out.println("Enter your user id:");
-        String userid = dbInfo.nextLine();
-        System.out.println("Enter your password:");
-        String passwd = dbInfo.nextLine();
-
-        String connectionString = "jdbc:mysql://localhost:3306/" + dbid + "?user=userid&password=passwd";
+        String dbid = settingOrAsk(dbInfo, options.primary, "Enter the name of the database:", "--primary",
+                options.fastStart);
+        String userid = settingOrAsk(dbInfo, options.user, "Enter your user id:", "--user", options.fastStart);
+        String passwd = settingOrAsk(dbInfo, options.password, "Enter your password:", "--password",
+                options.fastStart);
+
+        String connectionString = options.primary != null ? connectionUrl(options.primary)
+                : "jdbc:mysql://localhost:3306/" + dbid + "?user=userid&password=passwd";
         // "jdbc:mysql://localhost:3306/NameOfTheDatabase?user=userid&password=passwd"
+        // Let the driver send batched inserts as a single multi-row insert
+        if (options.batchSize > 0) {
+            connectionString = withProperty(connectionString, "rewriteBatchedStatements=true");
+        }
+        // Let LOAD DATA LOCAL INFILE read the rows the bulk loader streams to it
+        if (options.bulkLoadRunLength > 0) {
+            connectionString = withProperty(connectionString, "allowLoadLocalInfile=true");
+        }
+        // Prepare the cached statements on the server, and keep them open there
+        if (options.serverPreparedStatements) {
+            connectionString = withProperty(connectionString, "useServerPrepStmts=true&cachePrepStmts=true");
+        }
+        // Count only the rows a statement actually changed, which single statement
+        // mode uses to tell apart new and existing rows
+        if (options.singleStatement) {
+            connectionString = withProperty(connectionString, "useAffectedRows=true");
+        }
+        // Let the streamed results of codes 5 and 6 be fetched through a cursor on the
+        // server, a few rows at a time, instead of read in full by the driver
+        if (streamRows > 0) {
+            connectionString = withProperty(connectionString, "useCursorFetch=true");
+        }
         try (Connection conn = DriverManager.getConnection(connectionString, userid, passwd);) {
             System.out.println("Successfully opened the database");
 
             // Create the tables before processing any lines from the transfile
-            setupTables(conn);
+            setupTables(conn, options.fastStart);
+            boolean checkpointed = options.checkpoint && options.threads == 1;
+            // A followed transfile keeps growing, so its tables are never dropped
+            boolean keepTables = checkpointed || options.follow;
 
             // Make sure that the transfile is in the same directory as src:
             // My folder/file setup for my maven IntelliJ project
@@ -608,72 +1649,117 @@ public class JDBCProject {
             //  src
             //  target
             //  transfile.txt
-            try (Scanner in = new Scanner(new FileReader("transfile.txt"));) {
-
-                // Read each line of transfile.txt
-                while(in.hasNextLine()) {
-                    String currLine = in.nextLine();
-
-                    // If a line is blank (only a newline character), just skip it
-                    if (currLine.length() < 1) {
-                        System.out.println("Line was blank, skipping");
-                        continue;
-                    }
-
-                    // Check that the first character is a valid transaction code
-                    char transCodeChar = currLine.charAt(0);
-                    if (Character.isDigit(transCodeChar) == false) {
-                        System.out.println("Invalid Transaction Code, first char of line was not a number");
-                        continue;
-                    }
-                    int transcode = Character.getNumericValue(transCodeChar);
-                    if (transcode < 1 || transcode > 6) {
-                        System.out.println("Invalid Transaction Code, code must be a number between 1-6");
-                        continue;
+            try (ConnectionPool pool = options.threads > 1
+                         ? new ConnectionPool(connectionString, userid, passwd, options.threads) : null;
+                 ReadReplicas replicas = options.replicas != null ? new ReadReplicas(replicaUrls(options), userid,
+                         passwd, options.threads, options.readYourWrites, conn) : null) {
+                readReplicas = replicas;
+                // Prepare every statement up front, on every connection at once
+                if (options.fastStart) {
+                    try {
+                        StatementCache.warm(conn, handlerStatements());
+                        if (pool != null) {
+                            pool.warm(handlerStatements());
+                        }
+                    } catch (SQLException sqle) {
+                        System.out.println("Exception: " + sqle);
+                        System.out.println("Could not prepare the statements ahead, they are prepared on first use");
                     }
+                }
+                if (checkpointed) {
+                    SchemaManager.ensureCheckpointTable(conn);
+                }
+                // Start the in-memory tables from whatever is already in the database
+                if (options.backend == RunOptions.Backend.COMPARE) {
+                    compareBackend = new InMemoryBackend();
+                    compareBackend.load(conn);
+                }
+                if (options.fastStart) {
+                    reportStartupTime();
+                }
+                // Results of the lines are written by the sink's own thread from here on
+                ResultSink.open(options.outputFormat, options.outputFile);
+                if (options.metricsIntervalSeconds > 0) {
+                    Metrics.startPeriodicReport(options.metricsIntervalSeconds);
+                }
 
-                    // Execute each statement based on the number given
-                    // Error checking for correct form is then done in each method
-                    switch (transcode) {
-                        case 1:
-                            deleteEmployee(conn, currLine);
-                            break;
-                        case 2:
-                            insertEmployee(conn, currLine);
-                            break;
-                        case 3:
-                            deleteDepartment(conn, currLine);
-                            break;
-                        case 4:
-                            insertDepartment(conn, currLine);
-                            break;
-                        case 5:
-                            listEmployeesUnder(conn, currLine);
-                            break;
-                        case 6:
-                            listDepartments(conn, currLine);
-                            break;
+                // The transfile may also be a directory of transfiles, which are
+                // processed one after the other in order of their names
+                boolean directory = Files.isDirectory(Paths.get(options.transfile));
+                for (Path transfile : findTransfiles(options.transfile)) {
+                    if (directory) {
+                        ResultSink.println("Processing " + transfile);
                     }
+                    processTransfile(conn, pool, options, transfile);
                 }
+                Metrics.stopPeriodicReport();
+                ResultSink.close();
+                // How the reads were spread, before the try closes the replicas
+                if (replicas != null) {
+                    System.out.println(replicas.report());
+                }
+            } catch (Exception ex) {
+                ResultSink.close();
+                System.out.println("Exception: " + ex);
+                System.out.println("Could not open the file, make sure it is in the root directory");
+                StatementCache.close(conn);
+                // Keep the work of a checkpointed or followed run, so the next run can resume it
+                if (keepTables) {
+                    System.out.println("Kept the tables, run again to resume from the last checkpoint");
+                } else if (options.fastStart) {
+                    emptyAllTables(conn);
+                } else {
+                    dropAllTables(conn);
+                }
+                TransfileFollower.cleanedUp();
+                System.exit(-1);
+            }
+            readReplicas = null;
+
+            // The pooled connections were released by the try above, release every
+            // cached statement, and report how often the statements were reused when
+            // asked to, so a run without options prints what it always has
+            StatementCache.close(conn);
+            if (options.serverPreparedStatements || options.metrics) {
+                System.out.println(StatementCache.report());
+            }
+            if (employeeNames != null) {
+                System.out.println(employeeNames.report());
+                System.out.println(departmentNames.report());
+            }
+
+            // Report the counters and latencies of every transaction code
+            if (options.metrics) {
+                System.out.println(Metrics.summaryTable());
+            }
+            if (options.metricsFile != null) {
+                writeMetricsFile(options.metricsFile);
+            }
 
             // Drop the tables after processing the transfile
-            dropAllTables(conn);
+            // A checkpointed or followed run keeps them, along with its checkpoints,
+            // and a fast start run only empties them
+            if (options.follow) {
+                System.out.println("Stopped following " + options.transfile + ", kept the tables");
+            } else if (checkpointed) {
+                System.out.println("Kept the tables and checkpoints, running again skips the finished transfiles");
+            } else if (options.fastStart) {
+                emptyAllTables(conn);
+            } else {
+                dropAllTables(conn);
+            }
             // After processing every line of the transfile, close the connection
             conn.close();
 
             System.out.println("\nProgram ran successfully, now exiting");
+            TransfileFollower.cleanedUp();
             System.exit(0);
-            } catch (Exception ex) {
-                System.out.println("Exception: " + ex);
-                System.out.println("Could not open the file, make sure it is in the root directory");
-                dropAllTables(conn);
-                System.exit(-1);
-            }
         }
         catch(SQLException sqle) {
             System.out.println("Exception: " + sqle);
             System.out.println("Make sure you are entering the name of the database, " +
                     "your userid, and password correctly");
+            TransfileFollower.cleanedUp();
             System.exit(-1);
         }
     }
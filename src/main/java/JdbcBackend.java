@@ -0,0 +1,56 @@
+import java.sql.Connection;
+
+// The transaction codes run against MySQL through the JDBCProject handlers, on
+// the connection the line is processed on. This is the backend of a normal run
+// With --replicas, codes 5 and 6 run on a replica instead, through ReadReplicas
+public class JdbcBackend implements TransactionBackend {
+
+    private final Connection conn;
+
+    public JdbcBackend(Connection conn) {
+        this.conn = conn;
+    }
+
+    @Override
+    public void deleteEmployee(String ename) {
+        JDBCProject.deleteEmployee(conn, ename);
+        JDBCProject.tablesChanged();
+    }
+
+    @Override
+    public void insertEmployee(String ename, String dept_name, String salary, String city) {
+        JDBCProject.insertEmployee(conn, ename, dept_name, salary, city);
+    }
+
+    @Override
+    public void deleteDepartment(String dept_name) {
+        JDBCProject.deleteDepartment(conn, dept_name);
+        JDBCProject.tablesChanged();
+    }
+
+    @Override
+    public void insertDepartment(String dept_name, String mname) {
+        JDBCProject.insertDepartment(conn, dept_name, mname);
+        JDBCProject.tablesChanged();
+    }
+
+    @Override
+    public void listEmployeesUnder(String mname) {
+        ReadReplicas replicas = JDBCProject.readReplicas;
+        if (replicas != null) {
+            replicas.read(conn, replica -> JDBCProject.listEmployeesUnder(replica, mname));
+        } else {
+            JDBCProject.listEmployeesUnder(conn, mname);
+        }
+    }
+
+    @Override
+    public void listDepartments(String mname) {
+        ReadReplicas replicas = JDBCProject.readReplicas;
+        if (replicas != null) {
+            replicas.read(conn, replica -> JDBCProject.listDepartments(replica, mname));
+        } else {
+            JDBCProject.listDepartments(conn, mname);
+        }
+    }
+}
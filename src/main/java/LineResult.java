@@ -0,0 +1,140 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Everything reported while processing one line of the transfile
+// Built up by the ResultSink while the handler of the line runs, and written
+// out once the line has finished
+//  - messages are the lines of text the handler reported, such as "Not Found: Mary"
+//  - rows are the results of codes 5 and 6, one employee or department name each
+//  - outcome is "ok", or else "invalid" for a malformed line, "not_found" or
+//    "duplicate" if the line could not be applied, and "error" if a statement failed
+// When the rows of a line are streamed, what was reported so far is split off into
+// a partial result every so often and written ahead of the rest of the line
+public class LineResult {
+
+    private final long lineNumber;
+    private int code;
+    private String outcome = "ok";
+    private final List<String> messages = new ArrayList<>(2);
+    private final List<String> rows = new ArrayList<>();
+    // The messages and rows in the order they were reported, as the text output
+    private final StringBuilder text = new StringBuilder();
+    // Whether this is a part split off a line whose result is not finished yet
+    private boolean partial = false;
+
+    LineResult(long lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
+    // A result for a line whose handler failed with an unexpected exception
+    static LineResult ofError(long lineNumber, String message) {
+        LineResult result = new LineResult(lineNumber);
+        result.message(message);
+        result.outcome = "error";
+        return result;
+    }
+
+    void message(String message) {
+        messages.add(message);
+        text.append(message).append(System.lineSeparator());
+    }
+
+    void row(String row) {
+        rows.add(row);
+        text.append('\t').append(row).append(System.lineSeparator());
+    }
+
+    int rowCount() {
+        return rows.size();
+    }
+
+    // Moves everything reported so far into a partial result of its own, which is
+    // written before the rest of the line
+    LineResult split() {
+        LineResult part = new LineResult(lineNumber);
+        part.partial = true;
+        part.messages.addAll(messages);
+        part.rows.addAll(rows);
+        part.text.append(text);
+        messages.clear();
+        rows.clear();
+        text.setLength(0);
+        return part;
+    }
+
+    void setOutcome(String outcome) {
+        this.outcome = outcome;
+    }
+
+    void setCode(int code) {
+        this.code = code;
+    }
+
+    // The line of the transfile, counted from 1, or 0 if it did not come from a file
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    // The transaction code of the line, or 0 if it did not have a valid one
+    public int getCode() {
+        return code;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    public List<String> getMessages() {
+        return Collections.unmodifiableList(messages);
+    }
+
+    public List<String> getRows() {
+        return Collections.unmodifiableList(rows);
+    }
+
+    // The result as the text the handlers have always printed
+    public String toText() {
+        return text.toString();
+    }
+
+    // Whether this is only the start of the result of a line whose rows are streamed
+    public boolean isPartial() {
+        return partial;
+    }
+
+    // The result as one JSON object, without a trailing newline
+    // A partial result has "more": true in place of the code and outcome, which
+    // come with the last part of the line
+    public String toJson() {
+        StringBuilder json = new StringBuilder(64 + text.length());
+        json.append("{\"line\":").append(lineNumber);
+        if (partial) {
+            json.append(",\"more\":true,\"messages\":");
+            appendJsonArray(json, messages);
+            json.append(",\"rows\":");
+            appendJsonArray(json, rows);
+            return json.append('}').toString();
+        }
+        json.append(",\"code\":").append(code)
+                .append(",\"outcome\":");
+        ResultSink.appendJsonString(json, outcome);
+        json.append(",\"messages\":");
+        appendJsonArray(json, messages);
+        json.append(",\"rows\":");
+        appendJsonArray(json, rows);
+        return json.append('}').toString();
+    }
+
+    // Helper to write a list of strings as a JSON array
+    private static void appendJsonArray(StringBuilder json, List<String> values) {
+        json.append('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            ResultSink.appendJsonString(json, values.get(i));
+        }
+        json.append(']');
+    }
+}
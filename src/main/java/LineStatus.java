@@ -0,0 +1,23 @@
+// Tracks whether the line currently being processed on this thread failed
+// The transaction handlers catch their own SQLExceptions and print them, so
+// they mark the line as failed here, for callers that need to know (for
+// example to roll back the statements of that line)
+public class LineStatus {
+
+    private static final ThreadLocal<Boolean> failed = ThreadLocal.withInitial(() -> false);
+
+    // Called before a line is processed
+    public static void reset() {
+        failed.set(false);
+    }
+
+    // Called by a handler when one of the statements for the line failed
+    public static void fail() {
+        failed.set(true);
+    }
+
+    // Whether any statement of the current line failed since the last reset
+    public static boolean failed() {
+        return failed.get();
+    }
+}
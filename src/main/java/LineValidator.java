@@ -0,0 +1,63 @@
+// Checks the form of a line of the transfile without touching the database
+// Gives exactly the messages processLine reports for a malformed line, so a line
+// can also be rejected before it reaches the database
+// problemWith leaves code 2 lines to processLine, because the batched and bulk
+// loaded inserts need to see every code 2 line of a run in order
+public class LineValidator {
+
+    // Number of fields, and the expected form, of a line of each transaction code
+    // Code 6 reports the form of code 5, the same as listDepartments
+    private static final int[] FIELD_COUNTS = {0, 2, 5, 2, 3, 2, 2};
+    private static final String[] FORMS = {null, "1 ename", "2 ename dept_name salary city",
+            "3 dept_name", "4 dept_name mname", "5 mname", "5 mname"};
+
+    // Returns the transaction code of the line, or 0 if it does not have a valid one
+    public static int transcodeOf(TransfileLine line) {
+        if (line.length() < 1 || !Character.isDigit(line.firstChar())) {
+            return 0;
+        }
+        int transcode = Character.getNumericValue(line.firstChar());
+        return transcode >= 1 && transcode <= 6 ? transcode : 0;
+    }
+
+    // Returns the message the line would be rejected with, or null if it is well
+    // formed (or is a code 2 line)
+    public static String problemWith(TransfileLine line) {
+        // If a line is blank (only a newline character), just skip it
+        if (line.length() < 1) {
+            return "Line was blank, skipping";
+        }
+
+        // Check that the first character is a valid transaction code
+        if (!Character.isDigit(line.firstChar())) {
+            return "Invalid Transaction Code, first char of line was not a number";
+        }
+        int transcode = transcodeOf(line);
+        if (transcode == 0) {
+            return "Invalid Transaction Code, code must be a number between 1-6";
+        }
+        if (transcode == 2) {
+            return null;
+        }
+        return argumentProblem(line, transcode);
+    }
+
+    // Returns the message a line of the given code would be rejected with because of
+    // its arguments, or null if they are right for the code
+    public static String argumentProblem(TransfileLine line, int transcode) {
+        // Check the number of arguments for the code
+        if (line.fieldCount() > FIELD_COUNTS[transcode]) {
+            return "Line has too many arguments, line should be of the form:\n\t" + FORMS[transcode];
+        }
+        if (line.fieldCount() < FIELD_COUNTS[transcode]) {
+            return "Line has too few arguments, line should be of the form:\n\t" + FORMS[transcode];
+        }
+
+        // Check that the salary is a valid number, otherwise don't execute the statement
+        // Needed because the salary is declared as a numeric, rather than a varchar
+        if (transcode == 2 && !JDBCProject.isNumeric(line.field(3))) {
+            return "Salary must be a valid number";
+        }
+        return null;
+    }
+}
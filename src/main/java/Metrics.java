@@ -0,0 +1,221 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per transaction code counters for a run of the transfile
+// For every code this counts the lines processed, the SQL statements those lines
+// issued, and the rows those statements touched (changed, or read back), and keeps
+// a histogram of how long each line took. Lines that were blank or did not start
+// with a valid code are counted under code 0
+// Statements are counted by wrapping every statement the StatementCache hands out,
+// so the handlers themselves do not have to count anything
+public class Metrics {
+
+    // Names of the codes, as shown in the summary, index 0 is invalid lines
+    private static final String[] CODE_NAMES = {"invalid", "deleteEmployee", "insertEmployee",
+            "deleteDepartment", "insertDepartment", "listEmployeesUnder", "listDepartments"};
+
+    // Totals for one transaction code
+    private static class CodeMetrics {
+        final LongAdder lines = new LongAdder();
+        final LongAdder statements = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    // Statements and rows of the line in progress on this thread, added to the
+    // totals of its code once the line finishes
+    private static class LineCounts {
+        long statements;
+        long rows;
+    }
+
+    private static volatile boolean enabled = false;
+    private static final CodeMetrics[] byCode = new CodeMetrics[CODE_NAMES.length];
+    private static final ThreadLocal<LineCounts> current = ThreadLocal.withInitial(LineCounts::new);
+    private static ScheduledExecutorService reporter;
+
+    static {
+        for (int i = 0; i < byCode.length; i++) {
+            byCode[i] = new CodeMetrics();
+        }
+    }
+
+    public static void enable() {
+        enabled = true;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Called once a line of the given code (0 if invalid) has been processed
+    public static void lineFinished(int transcode, long nanos) {
+        linesFinished(transcode, 1, nanos);
+    }
+
+    // Called once several lines of the same code have been processed together, such
+    // as a batch of code 2 lines. Each line is recorded as taking an equal share
+    public static void linesFinished(int transcode, int lineCount, long nanos) {
+        if (!enabled || lineCount == 0) {
+            return;
+        }
+        CodeMetrics metrics = byCode[transcode >= 0 && transcode < byCode.length ? transcode : 0];
+        LineCounts counts = current.get();
+        metrics.lines.add(lineCount);
+        metrics.statements.add(counts.statements);
+        metrics.rows.add(counts.rows);
+        for (int i = 0; i < lineCount; i++) {
+            metrics.latency.record(nanos / lineCount);
+        }
+        counts.statements = 0;
+        counts.rows = 0;
+    }
+
+    // Called for every statement executed for the line in progress on this thread
+    public static void statementExecuted(long rows) {
+        LineCounts counts = current.get();
+        counts.statements++;
+        counts.rows += rows;
+    }
+
+    // Called for every row read back from a result set
+    public static void rowRead() {
+        current.get().rows++;
+    }
+
+    // Wraps a prepared statement so that every statement it executes, and every
+    // row read from its results, is counted for the line in progress
+    public static PreparedStatement instrument(PreparedStatement stmt) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Object result = invoke(stmt, method, args);
+            switch (method.getName()) {
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                    statementExecuted(((Number) result).longValue());
+                    break;
+                case "executeBatch":
+                    statementExecuted(sumUpdateCounts((int[]) result));
+                    break;
+                case "execute":
+                    statementExecuted(Math.max(0, stmt.getUpdateCount()));
+                    break;
+                case "executeQuery":
+                    statementExecuted(0);
+                    return instrument((ResultSet) result);
+                default:
+            }
+            return result;
+        };
+        return (PreparedStatement) Proxy.newProxyInstance(Metrics.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, handler);
+    }
+
+    // Helper to wrap a result set so that every row read from it is counted
+    private static ResultSet instrument(ResultSet rs) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Object result = invoke(rs, method, args);
+            if (method.getName().equals("next") && (Boolean) result) {
+                rowRead();
+            }
+            return result;
+        };
+        return (ResultSet) Proxy.newProxyInstance(Metrics.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, handler);
+    }
+
+    // Helper to call the wrapped object, unwrapping any exception it throws
+    private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ite) {
+            throw ite.getCause();
+        }
+    }
+
+    // Helper to add up the rows changed by a batch, counting a row whose count the
+    // driver did not report as one row
+    private static long sumUpdateCounts(int[] updateCounts) {
+        long rows = 0;
+        for (int updateCount : updateCounts) {
+            rows += updateCount == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0, updateCount);
+        }
+        return rows;
+    }
+
+    // Prints the summary table every intervalSeconds while the run continues
+    // Printed to System.err, so it is never mixed into the results of the lines
+    public static synchronized void startPeriodicReport(long intervalSeconds) {
+        if (reporter != null || intervalSeconds <= 0) {
+            return;
+        }
+        PrintStream err = System.err;
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> err.println(summaryTable()),
+                intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stopPeriodicReport() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    // A table with one row per transaction code, latencies in microseconds
+    public static String summaryTable() {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-20s %10s %12s %12s %10s %10s %10s %10s%n",
+                "code", "lines", "statements", "rows", "p50 us", "p99 us", "max us", "mean us"));
+        for (int code = 0; code < byCode.length; code++) {
+            CodeMetrics metrics = byCode[code];
+            LatencyHistogram latency = metrics.latency;
+            table.append(String.format(Locale.ROOT, "%-20s %10d %12d %12d %10.1f %10.1f %10.1f %10.1f%n",
+                    code + " " + CODE_NAMES[code], metrics.lines.sum(), metrics.statements.sum(),
+                    metrics.rows.sum(), latency.getPercentile(0.50) / 1000.0,
+                    latency.getPercentile(0.99) / 1000.0, latency.getMax() / 1000.0,
+                    latency.getMean() / 1000.0));
+        }
+        return table.toString();
+    }
+
+    // Writes every counter to a JSON file, latencies in microseconds
+    public static void writeJson(String fileName) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(fileName)))) {
+            out.println("{");
+            out.println("  \"codes\": [");
+            for (int code = 0; code < byCode.length; code++) {
+                CodeMetrics metrics = byCode[code];
+                LatencyHistogram latency = metrics.latency;
+                out.printf(Locale.ROOT, "    {\"code\": %d, \"name\": \"%s\", \"lines\": %d, \"statements\": %d, " +
+                                "\"rows\": %d, \"latencyMicros\": {\"p50\": %.1f, \"p99\": %.1f, \"max\": %.1f, " +
+                                "\"mean\": %.1f}}%s%n",
+                        code, CODE_NAMES[code], metrics.lines.sum(), metrics.statements.sum(),
+                        metrics.rows.sum(), latency.getPercentile(0.50) / 1000.0,
+                        latency.getPercentile(0.99) / 1000.0, latency.getMax() / 1000.0,
+                        latency.getMean() / 1000.0, code < byCode.length - 1 ? "," : "");
+            }
+            out.println("  ],");
+            out.printf("  \"statementCache\": {\"hits\": %d, \"misses\": %d}%n",
+                    StatementCache.getTotalHits(), StatementCache.getTotalMisses());
+            out.println("}");
+        }
+    }
+}
@@ -0,0 +1,292 @@
+import java.sql.*;
+import java.util.*;
+
+// Client side copy of the manager -> department -> employee relationships
+// Loaded from the employee and department tables the first time it is needed,
+// and then kept up to date by codes 1-4 as they succeed, so that codes 5 and 6
+// can be answered from memory without running any SQL. If a line that changes
+// the tables fails part way, the graph is invalidated and loaded again on the
+// next read, rather than guessing which of its statements took effect
+// Every employee and department name is given an int id, and the relationships
+// are stored as arrays and int lists indexed by those ids, so the graph stays
+// small even with millions of employees
+// Names are matched folded with Collation.fold, because the default MySQL collation
+// treats "Software" and "software" as the same value in the joins it replaces
+public class OrgGraph {
+
+    private static final int NONE = -1;
+
+    // A growable list of ints, used for the adjacency lists of the graph
+    private static class IntList {
+        int[] values = new int[2];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        // Removes the first occurrence of value, the order of the list is not kept
+        void remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    values[i] = values[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    // Ids of every employee and department name seen so far
+    private final Map<String, Integer> employeeIds = new HashMap<>();
+    private final Map<String, Integer> departmentIds = new HashMap<>();
+
+    // Indexed by employee id
+    // The name as stored in the employee table, or null if there is no such employee
+    private String[] employeeNames = new String[16];
+    // The id of the employee's dept_name, or NONE if it is null
+    private int[] employeeDepartment = new int[16];
+    // The ids of the departments the employee manages, or null if none ever were
+    private IntList[] managedDepartments = new IntList[16];
+
+    // Indexed by department id
+    // The name as stored in the department table, or null if there is no such department
+    private String[] departmentNames = new String[16];
+    // The id of the department's manager, or NONE if mname is null
+    private int[] departmentManager = new int[16];
+    // The ids of the employees whose dept_name is this department, or null if none ever were
+    private IntList[] departmentMembers = new IntList[16];
+
+    private boolean loaded = false;
+
+    // Marks the graph as out of date, so it is loaded again before the next read
+    public synchronized void invalidate() {
+        loaded = false;
+    }
+
+    // Helper method for Transaction Code 5
+    // Returns the names of every employee directly and indirectly under mname, or
+    // null if mname does not manage any department, the same as findEmployeesUnderBfs
+    public synchronized HashSet<String> findEmployeesUnder(Connection conn, String mname) throws SQLException {
+        ensureLoaded(conn);
+        Integer managerId = employeeIds.get(Collation.fold(mname));
+        if (managerId == null || countManaged(managerId) == 0) {
+            return null;
+        }
+
+        // Breadth first search over employee ids, the employees of every department
+        // managed by an employee are under them
+        HashSet<String> employees = new HashSet<>();
+        BitSet visited = new BitSet(employeeNames.length);
+        IntList queue = new IntList();
+        queue.add(managerId);
+        for (int head = 0; head < queue.size; head++) {
+            IntList managed = managedDepartments[queue.values[head]];
+            if (managed == null) {
+                continue;
+            }
+            for (int i = 0; i < managed.size; i++) {
+                IntList members = departmentMembers[managed.values[i]];
+                if (members == null) {
+                    continue;
+                }
+                for (int j = 0; j < members.size; j++) {
+                    int employeeId = members.values[j];
+                    if (!visited.get(employeeId)) {
+                        visited.set(employeeId);
+                        employees.add(employeeNames[employeeId]);
+                        queue.add(employeeId);
+                    }
+                }
+            }
+        }
+        return employees;
+    }
+
+    // Helper method for Transaction Code 6
+    // Returns the names of the departments managed by mname, in the order the
+    // department primary key would return them, or null if there are none
+    public synchronized List<String> findDepartmentsManagedBy(Connection conn, String mname) throws SQLException {
+        ensureLoaded(conn);
+        Integer managerId = employeeIds.get(Collation.fold(mname));
+        if (managerId == null || countManaged(managerId) == 0) {
+            return null;
+        }
+        IntList managed = managedDepartments[managerId];
+        List<String> departments = new ArrayList<>(managed.size);
+        for (int i = 0; i < managed.size; i++) {
+            departments.add(departmentNames[managed.values[i]]);
+        }
+        departments.sort(String.CASE_INSENSITIVE_ORDER);
+        return departments;
+    }
+
+    // Called after Transaction Code 2 inserted a new employee
+    public synchronized void employeeInserted(String ename, String dept_name) {
+        if (!loaded) {
+            return;
+        }
+        int employeeId = employeeId(ename);
+        employeeNames[employeeId] = ename;
+        setEmployeeDepartment(employeeId, departmentId(dept_name));
+    }
+
+    // Called after Transaction Code 1 deleted an employee, which also set to null
+    // the manager of every department they managed
+    public synchronized void employeeDeleted(String ename) {
+        if (!loaded) {
+            return;
+        }
+        int employeeId = employeeId(ename);
+        IntList managed = managedDepartments[employeeId];
+        if (managed != null) {
+            for (int i = 0; i < managed.size; i++) {
+                departmentManager[managed.values[i]] = NONE;
+            }
+            managed.size = 0;
+        }
+        setEmployeeDepartment(employeeId, NONE);
+        employeeNames[employeeId] = null;
+    }
+
+    // Called after Transaction Code 3 deleted a department, which also set to null
+    // the dept_name of every employee in it
+    public synchronized void departmentDeleted(String dept_name) {
+        if (!loaded) {
+            return;
+        }
+        int departmentId = departmentId(dept_name);
+        setDepartmentManager(departmentId, NONE);
+        IntList members = departmentMembers[departmentId];
+        if (members != null) {
+            for (int i = 0; i < members.size; i++) {
+                employeeDepartment[members.values[i]] = NONE;
+            }
+            members.size = 0;
+        }
+        departmentNames[departmentId] = null;
+    }
+
+    // Called after Transaction Code 4 inserted (or replaced) a department
+    public synchronized void departmentInserted(String dept_name, String mname) {
+        if (!loaded) {
+            return;
+        }
+        int departmentId = departmentId(dept_name);
+        departmentNames[departmentId] = dept_name;
+        setDepartmentManager(departmentId, employeeId(mname));
+    }
+
+    // Helper to load the whole graph from the database if it is out of date
+    private void ensureLoaded(Connection conn) throws SQLException {
+        if (loaded) {
+            return;
+        }
+        employeeIds.clear();
+        departmentIds.clear();
+        Arrays.fill(employeeNames, null);
+        Arrays.fill(managedDepartments, null);
+        Arrays.fill(departmentNames, null);
+        Arrays.fill(departmentMembers, null);
+
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet employees = stmt.executeQuery("select ename, dept_name from employee");
+            while (employees.next()) {
+                String ename = employees.getString(1);
+                String dept_name = employees.getString(2);
+                int employeeId = employeeId(ename);
+                employeeNames[employeeId] = ename;
+                employeeDepartment[employeeId] = NONE;
+                if (dept_name != null) {
+                    setEmployeeDepartment(employeeId, departmentId(dept_name));
+                }
+            }
+            ResultSet departments = stmt.executeQuery("select dept_name, mname from department");
+            while (departments.next()) {
+                String dept_name = departments.getString(1);
+                String mname = departments.getString(2);
+                int departmentId = departmentId(dept_name);
+                departmentNames[departmentId] = dept_name;
+                departmentManager[departmentId] = NONE;
+                if (mname != null) {
+                    setDepartmentManager(departmentId, employeeId(mname));
+                }
+            }
+        }
+        loaded = true;
+    }
+
+    // Helper to move an employee into a department (or out of every department, for NONE)
+    private void setEmployeeDepartment(int employeeId, int departmentId) {
+        int previous = employeeDepartment[employeeId];
+        if (previous != NONE && departmentMembers[previous] != null) {
+            departmentMembers[previous].remove(employeeId);
+        }
+        employeeDepartment[employeeId] = departmentId;
+        if (departmentId != NONE) {
+            if (departmentMembers[departmentId] == null) {
+                departmentMembers[departmentId] = new IntList();
+            }
+            departmentMembers[departmentId].add(employeeId);
+        }
+    }
+
+    // Helper to change the manager of a department (or clear it, for NONE)
+    private void setDepartmentManager(int departmentId, int managerId) {
+        int previous = departmentManager[departmentId];
+        if (previous != NONE && managedDepartments[previous] != null) {
+            managedDepartments[previous].remove(departmentId);
+        }
+        departmentManager[departmentId] = managerId;
+        if (managerId != NONE) {
+            if (managedDepartments[managerId] == null) {
+                managedDepartments[managerId] = new IntList();
+            }
+            managedDepartments[managerId].add(departmentId);
+        }
+    }
+
+    // Helper to count the departments an employee manages
+    private int countManaged(int employeeId) {
+        IntList managed = managedDepartments[employeeId];
+        return managed == null ? 0 : managed.size;
+    }
+
+    // Helper to get the id of an employee name, giving it a new one if it has none
+    private int employeeId(String ename) {
+        Integer id = employeeIds.get(Collation.fold(ename));
+        if (id != null) {
+            return id;
+        }
+        int newId = employeeIds.size();
+        employeeIds.put(Collation.fold(ename), newId);
+        if (newId == employeeNames.length) {
+            int capacity = newId * 2;
+            employeeNames = Arrays.copyOf(employeeNames, capacity);
+            employeeDepartment = Arrays.copyOf(employeeDepartment, capacity);
+            managedDepartments = Arrays.copyOf(managedDepartments, capacity);
+        }
+        employeeDepartment[newId] = NONE;
+        return newId;
+    }
+
+    // Helper to get the id of a department name, giving it a new one if it has none
+    private int departmentId(String dept_name) {
+        Integer id = departmentIds.get(Collation.fold(dept_name));
+        if (id != null) {
+            return id;
+        }
+        int newId = departmentIds.size();
+        departmentIds.put(Collation.fold(dept_name), newId);
+        if (newId == departmentNames.length) {
+            int capacity = newId * 2;
+            departmentNames = Arrays.copyOf(departmentNames, capacity);
+            departmentManager = Arrays.copyOf(departmentManager, capacity);
+            departmentMembers = Arrays.copyOf(departmentMembers, capacity);
+        }
+        departmentManager[newId] = NONE;
+        return newId;
+    }
+}
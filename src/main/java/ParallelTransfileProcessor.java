@@ -0,0 +1,209 @@
+import java.sql.Connection;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Processes the lines of the transfile in parallel over a pool of connections
+// Every line is run as soon as the earlier lines it depends on have finished:
+//  - Lines on the same entity keep their file order. An employee is touched by
+//    codes 1 and 2 (ename) and code 4 (mname), a department by codes 3 and 4
+//    (dept_name), and the employees of a department by codes 2 and 3
+//  - Reads (codes 5 and 6) wait for every earlier write to the tables they
+//    read, and writes wait for every earlier read of the tables they change
+// The result of each line is written to the ResultSink in file order, so the final
+// state of the database and the printed messages match a sequential run
+public class ParallelTransfileProcessor implements TransfileProcessor {
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    // Order of lines on one entity (an employee row, a department row, or the set of
+    // employees in a department). Lines that only check the entity share access to it
+    // and may run together, lines that change it have exclusive access
+    private static class KeyOrder {
+        CompletableFuture<?> lastExclusive = DONE;
+        List<CompletableFuture<?>> sharedSinceExclusive = new ArrayList<>();
+    }
+
+    // Order of the reads and writes of one table
+    private static class TableOrder {
+        CompletableFuture<?> writesDone = DONE;
+        CompletableFuture<?> readsDone = DONE;
+    }
+
+    private final ConnectionPool pool;
+    private final ExecutorService workers;
+    // Most lines that may be in progress or waiting to be printed at once
+    private final int maxInFlight;
+
+    // Result of each line, in file order
+    private final Deque<CompletableFuture<LineResult>> inFlight = new ArrayDeque<>();
+    private final Map<String, KeyOrder> keyOrders = new HashMap<>();
+    private final TableOrder employeeTable = new TableOrder();
+    private final TableOrder departmentTable = new TableOrder();
+
+    public ParallelTransfileProcessor(ConnectionPool pool) {
+        this.pool = pool;
+        this.workers = Executors.newFixedThreadPool(pool.size());
+        this.maxInFlight = pool.size() * 256;
+    }
+
+    @Override
+    public void process(TransfileLine line) {
+        inFlight.add(schedule(line.copy()));
+        // Write finished lines from the front, and wait for the oldest line if too
+        // many are outstanding, so a large transfile is never held in memory
+        while (!inFlight.isEmpty() && (inFlight.peekFirst().isDone() || inFlight.size() > maxInFlight)) {
+            ResultSink.write(inFlight.removeFirst().join());
+        }
+    }
+
+    // Every line is committed as it runs, so this only waits for the lines in
+    // progress and writes their results
+    @Override
+    public void flush() {
+        while (!inFlight.isEmpty()) {
+            ResultSink.write(inFlight.removeFirst().join());
+        }
+    }
+
+    @Override
+    public void finish() {
+        flush();
+        workers.shutdown();
+    }
+
+    // Works out which earlier lines the given line depends on, and schedules it to
+    // run on a pooled connection once they have all finished
+    private CompletableFuture<LineResult> schedule(TransfileLine line) {
+        int fieldCount = line.fieldCount();
+        int transcode = line.length() > 0 && Character.isDigit(line.firstChar())
+                ? Character.getNumericValue(line.firstChar()) : -1;
+
+        List<String> exclusiveKeys = new ArrayList<>();
+        List<String> sharedKeys = new ArrayList<>();
+        List<TableOrder> readTables = new ArrayList<>();
+        List<TableOrder> writeTables = new ArrayList<>();
+
+        // Lines with the wrong number of arguments never reach the database, so they
+        // have no dependencies, the handler will only print the error
+        switch (transcode) {
+            case 1:
+                if (fieldCount == 2) {
+                    exclusiveKeys.add(employeeKey(line.field(1)));
+                    writeTables.add(employeeTable);
+                    writeTables.add(departmentTable);
+                }
+                break;
+            case 2:
+                if (fieldCount == 5) {
+                    exclusiveKeys.add(employeeKey(line.field(1)));
+                    sharedKeys.add(departmentMembersKey(line.field(2)));
+                    writeTables.add(employeeTable);
+                }
+                break;
+            case 3:
+                if (fieldCount == 2) {
+                    exclusiveKeys.add(departmentKey(line.field(1)));
+                    exclusiveKeys.add(departmentMembersKey(line.field(1)));
+                    writeTables.add(employeeTable);
+                    writeTables.add(departmentTable);
+                }
+                break;
+            case 4:
+                if (fieldCount == 3) {
+                    exclusiveKeys.add(departmentKey(line.field(1)));
+                    sharedKeys.add(employeeKey(line.field(2)));
+                    writeTables.add(departmentTable);
+                }
+                break;
+            case 5:
+                if (fieldCount == 2) {
+                    readTables.add(employeeTable);
+                    readTables.add(departmentTable);
+                }
+                break;
+            case 6:
+                if (fieldCount == 2) {
+                    readTables.add(departmentTable);
+                }
+                break;
+        }
+
+        List<CompletableFuture<?>> dependencies = new ArrayList<>();
+        for (String key : exclusiveKeys) {
+            KeyOrder order = keyOrders.computeIfAbsent(key, k -> new KeyOrder());
+            dependencies.add(order.lastExclusive);
+            dependencies.addAll(order.sharedSinceExclusive);
+        }
+        for (String key : sharedKeys) {
+            dependencies.add(keyOrders.computeIfAbsent(key, k -> new KeyOrder()).lastExclusive);
+        }
+        for (TableOrder table : readTables) {
+            dependencies.add(table.writesDone);
+        }
+        for (TableOrder table : writeTables) {
+            dependencies.add(table.readsDone);
+        }
+
+        // Run the line once every dependency has finished, even if one of them failed
+        CompletableFuture<LineResult> result = CompletableFuture
+                .allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, failure) -> null)
+                .thenApplyAsync(ignored -> runLine(line), workers);
+
+        // Record this line as the latest to touch each of its keys and tables
+        for (String key : exclusiveKeys) {
+            KeyOrder order = keyOrders.get(key);
+            order.lastExclusive = result;
+            order.sharedSinceExclusive = new ArrayList<>();
+        }
+        for (String key : sharedKeys) {
+            KeyOrder order = keyOrders.get(key);
+            order.sharedSinceExclusive.removeIf(CompletableFuture::isDone);
+            order.sharedSinceExclusive.add(result);
+        }
+        for (TableOrder table : readTables) {
+            table.readsDone = CompletableFuture.allOf(table.readsDone, result);
+        }
+        for (TableOrder table : writeTables) {
+            table.writesDone = CompletableFuture.allOf(table.writesDone, result);
+        }
+        forgetFinishedKeys();
+        return result;
+    }
+
+    // Runs a single line on a borrowed connection, and returns what it reported
+    private LineResult runLine(TransfileLine line) {
+        Connection conn = pool.borrow();
+        try {
+            return JDBCProject.processLineForResult(conn, line);
+        } catch (RuntimeException re) {
+            return LineResult.ofError(line.number(), "Exception: " + re);
+        } finally {
+            pool.release(conn);
+        }
+    }
+
+    // Helper to drop the order of keys whose lines have all finished, so that the
+    // map only holds keys that still have work in progress
+    private void forgetFinishedKeys() {
+        if (keyOrders.size() < maxInFlight * 4) {
+            return;
+        }
+        keyOrders.values().removeIf(order -> order.lastExclusive.isDone()
+                && order.sharedSinceExclusive.stream().allMatch(CompletableFuture::isDone));
+    }
+
+    // Names are compared folded, because the default MySQL collation treats "Mary"
+    // and "mary" as the same primary key
+    private static String employeeKey(String ename) {
+        return "employee:" + Collation.fold(ename);
+    }
+
+    private static String departmentKey(String dept_name) {
+        return "department:" + Collation.fold(dept_name);
+    }
+
+    private static String departmentMembersKey(String dept_name) {
+        return "members:" + Collation.fold(dept_name);
+    }
+}
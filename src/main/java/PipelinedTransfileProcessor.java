@@ -0,0 +1,198 @@
+import java.sql.Connection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Processes the transfile in stages that run at the same time, on one connection
+//  1. read   - main reads and splits each line, and hands a copy to process
+//  2. check  - a validator thread rejects malformed lines without the database
+//  3. run    - an executor thread runs the well formed lines in file order, through
+//              a SequentialTransfileProcessor, so batching, bulk loading and
+//              transaction grouping all work as usual
+//  4. write  - the ResultSink writer thread writes the results
+// The stages are joined by bounded queues, so the reader can be up to about
+// 2 * QUEUE_CAPACITY lines ahead of the database, and waits once it gets that far
+// The executor can run on a virtual thread on Java 21 or later, so waiting on
+// the database does not hold a platform thread
+public class PipelinedTransfileProcessor implements TransfileProcessor {
+
+    private static final int QUEUE_CAPACITY = 1024;
+
+    // Put on a queue after the last line, to stop the stage reading it
+    private static final TransfileLine END_OF_LINES = new TransfileLine();
+    private static final Validated END_OF_VALIDATED = new Validated(null, null);
+    // Passed along both queues to have the executor flush once it gets there
+    private static final TransfileLine FLUSH_LINES = new TransfileLine();
+    private static final Validated FLUSH_VALIDATED = new Validated(null, null);
+
+    // A line that has been through the validator, with its result if it was rejected
+    private static class Validated {
+        final TransfileLine line;
+        final LineResult rejected;
+
+        Validated(TransfileLine line, LineResult rejected) {
+            this.line = line;
+            this.rejected = rejected;
+        }
+    }
+
+    private final SequentialTransfileProcessor executor;
+    private final BlockingQueue<TransfileLine> toValidate = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<Validated> toExecute = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread validatorThread;
+    private final Thread executorThread;
+    // The first exception thrown by a stage, rethrown to main
+    private volatile RuntimeException failure;
+
+    public PipelinedTransfileProcessor(Connection conn, RunOptions options, Checkpoint checkpoint) {
+        this.executor = new SequentialTransfileProcessor(conn, options, checkpoint);
+        validatorThread = new Thread(this::validateLines, "pipeline-validator");
+        validatorThread.setDaemon(true);
+        validatorThread.start();
+        executorThread = startThread("pipeline-executor", this::executeLines, options.virtualThreads);
+    }
+
+    @Override
+    public void process(TransfileLine line) {
+        checkFailure();
+        put(toValidate, line.copy());
+    }
+
+    // Does not wait for the flush, the executor flushes once it has run every
+    // line given before it
+    @Override
+    public void flush() {
+        checkFailure();
+        put(toValidate, FLUSH_LINES);
+    }
+
+    @Override
+    public void finish() {
+        put(toValidate, END_OF_LINES);
+        try {
+            validatorThread.join();
+            executorThread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        checkFailure();
+    }
+
+    // Body of the validator thread
+    // Lines the validator rejects are given their result here, and the executor
+    // only writes it out in its place in the file
+    private void validateLines() {
+        try {
+            while (true) {
+                TransfileLine line = toValidate.take();
+                if (line == END_OF_LINES) {
+                    put(toExecute, END_OF_VALIDATED);
+                    return;
+                }
+                if (line == FLUSH_LINES) {
+                    put(toExecute, FLUSH_VALIDATED);
+                    continue;
+                }
+                String problem = LineValidator.problemWith(line);
+                LineResult rejected = null;
+                if (problem != null) {
+                    long start = System.nanoTime();
+                    int transcode = LineValidator.transcodeOf(line);
+                    ResultSink.begin(line.number());
+                    ResultSink.invalid(problem);
+                    rejected = ResultSink.end(transcode);
+                    Metrics.lineFinished(transcode, System.nanoTime() - start);
+                }
+                put(toExecute, new Validated(line, rejected));
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException re) {
+            fail(re);
+            put(toExecute, END_OF_VALIDATED);
+            drain(toValidate, END_OF_LINES);
+        }
+    }
+
+    // Body of the executor thread
+    private void executeLines() {
+        try {
+            while (true) {
+                Validated validated = toExecute.take();
+                if (validated == END_OF_VALIDATED) {
+                    executor.finish();
+                    return;
+                }
+                if (validated == FLUSH_VALIDATED) {
+                    executor.flush();
+                    continue;
+                }
+                if (validated.rejected != null) {
+                    executor.processResolved(validated.line, validated.rejected);
+                } else {
+                    executor.process(validated.line);
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException re) {
+            fail(re);
+            drain(toExecute, END_OF_VALIDATED);
+        }
+    }
+
+    // Helper to record the first exception thrown by a stage
+    private synchronized void fail(RuntimeException re) {
+        if (failure == null) {
+            failure = re;
+        }
+    }
+
+    // Helper to rethrow the exception of a stage on the main thread
+    private void checkFailure() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Helper for a stage that failed to keep taking items until the end marker, so
+    // the stage before it is never left waiting on a full queue
+    private static <T> void drain(BlockingQueue<T> queue, T end) {
+        try {
+            T item;
+            do {
+                item = queue.take();
+            } while (item != end);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Helper to put an item on a queue, waiting while the queue is full
+    private static <T> void put(BlockingQueue<T> queue, T item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Starts body on a virtual thread if asked for and this JDK has them, or on a
+    // platform thread otherwise. Found through reflection, so the project still
+    // builds for Java 11
+    private static Thread startThread(String name, Runnable body, boolean virtual) {
+        if (virtual) {
+            try {
+                Thread thread = (Thread) Thread.class.getMethod("startVirtualThread", Runnable.class)
+                        .invoke(null, body);
+                thread.setName(name);
+                return thread;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                System.out.println("Virtual threads need Java 21 or later, using a platform thread for " + name);
+            }
+        }
+        Thread thread = new Thread(body, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,129 @@
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Sends the reads of codes 5 and 6 to read only replicas of the database, for
+// --replicas, so the hierarchy queries do not compete with the writes of codes 1-4
+// on the primary. The replica connections are pooled, and every read borrows one
+// A replica may lag behind the primary. With read your writes, a read first waits
+// (up to CATCH_UP_TIMEOUT_SECONDS) until the replica it runs on has applied every
+// transaction the primary had committed when the read started, through the GTIDs
+// of the primary. Once a replica connection has caught up, later reads on it only
+// wait again after the next write. The read runs on the primary instead when the
+// replica cannot be made to catch up:
+//  - the primary has writes that are not committed yet (the transaction of a
+//    TransactionGroup), which no replica can see
+//  - the primary does not have gtid_mode ON, so there is nothing to wait for
+//  - the replica did not catch up in time
+public class ReadReplicas implements AutoCloseable {
+
+    // Longest time a read waits for its replica to catch up with the primary
+    private static final int CATCH_UP_TIMEOUT_SECONDS = 10;
+
+    static final String EXECUTED_GTIDS_SQL = "select @@global.gtid_executed";
+    static final String WAIT_FOR_GTIDS_SQL = "select wait_for_executed_gtid_set(?, " + CATCH_UP_TIMEOUT_SECONDS + ")";
+
+    private final ConnectionPool pool;
+    private final boolean readYourWrites;
+    private final boolean gtidMode;
+
+    // Number of lines that wrote to the primary so far, and for each replica
+    // connection, how many of them it is known to have applied
+    private final AtomicLong writes = new AtomicLong();
+    private final Map<Connection, Long> caughtUpTo = new ConcurrentHashMap<>();
+
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong waitedReads = new AtomicLong();
+    private final AtomicLong primaryReads = new AtomicLong();
+    private final AtomicLong timedOutReads = new AtomicLong();
+
+    // Opens sizePerReplica read only connections to each replica
+    // primary is only used to check that it records GTIDs, for read your writes
+    public ReadReplicas(List<String> connectionStrings, String userid, String passwd, int sizePerReplica,
+                        boolean readYourWrites, Connection primary) throws SQLException {
+        this.pool = new ConnectionPool(connectionStrings, userid, passwd, sizePerReplica);
+        this.readYourWrites = readYourWrites;
+        this.gtidMode = readYourWrites && gtidModeOn(primary);
+        if (readYourWrites && !gtidMode) {
+            System.out.println("The primary does not have gtid_mode ON, so reads after a write run on the " +
+                    "primary instead of waiting for a replica");
+        }
+    }
+
+    // Called after a line ran statements that change the tables on the primary
+    public void wrote() {
+        writes.incrementAndGet();
+    }
+
+    // Runs read on a replica, or on primary (the connection the line is processed on)
+    // if read your writes is on and no replica can be brought up to date
+    public void read(Connection primary, Consumer<Connection> read) {
+        Connection replica = pool.borrow();
+        try {
+            if (!readYourWrites || caughtUp(primary, replica)) {
+                replicaReads.incrementAndGet();
+                replica.setReadOnly(true);
+                read.accept(replica);
+                return;
+            }
+        } catch (SQLException sqle) {
+            ResultSink.println("Exception: " + sqle);
+            ResultSink.println("Could not use the replica, reading from the primary");
+        } finally {
+            pool.release(replica);
+        }
+        primaryReads.incrementAndGet();
+        read.accept(primary);
+    }
+
+    // Summary of where the reads ran, printed at the end of a run
+    public String report() {
+        return String.format("Reads: %d on replicas (%d after waiting for them to catch up), %d on the primary " +
+                        "(%d because a replica did not catch up in time)", replicaReads.get(), waitedReads.get(),
+                primaryReads.get(), timedOutReads.get());
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    // Helper to make sure replica has applied every write made before the read
+    // Returns false if it has not, and the read should run on the primary
+    private boolean caughtUp(Connection primary, Connection replica) throws SQLException {
+        long target = writes.get();
+        if (caughtUpTo.getOrDefault(replica, 0L) >= target) {
+            return true;
+        }
+        if (!gtidMode || !primary.getAutoCommit()) {
+            return false;
+        }
+        PreparedStatement executedGtids = StatementCache.prepare(primary, EXECUTED_GTIDS_SQL);
+        ResultSet rs = executedGtids.executeQuery();
+        rs.next();
+        String executed = rs.getString(1);
+
+        PreparedStatement waitForGtids = StatementCache.prepare(replica, WAIT_FOR_GTIDS_SQL);
+        waitForGtids.setString(1, executed);
+        rs = waitForGtids.executeQuery();
+        rs.next();
+        // 0 once the replica has applied them, 1 if the wait timed out
+        if (rs.getInt(1) != 0) {
+            timedOutReads.incrementAndGet();
+            return false;
+        }
+        waitedReads.incrementAndGet();
+        caughtUpTo.put(replica, target);
+        return true;
+    }
+
+    // Helper to check if the primary records the GTID of every transaction
+    private static boolean gtidModeOn(Connection primary) throws SQLException {
+        try (Statement stmt = primary.createStatement()) {
+            ResultSet rs = stmt.executeQuery("select @@global.gtid_mode");
+            return rs.next() && "ON".equalsIgnoreCase(rs.getString(1));
+        }
+    }
+}
@@ -0,0 +1,305 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Where the results of every line of the transfile are sent
+// The handlers report through println, row and the outcome methods here rather
+// than printing to System.out themselves. Everything reported while a line is
+// being processed on a thread is collected into that line's LineResult, which is
+// then queued for a single writer thread. The writer takes the queued results in
+// batches, writes them through a buffered stream, and only flushes once the
+// queue is empty, so the threads doing the database work never wait on the
+// console. Results are written either as the usual text, or as JSON Lines with
+// one object per line of the transfile
+// Anything reported while no line is in progress (such as a failed commit) is
+// queued as a note between the results, as is, or as {"note": ...} in JSON
+// Until open is called, results are written straight to System.out as text
+// With streaming on, a line that has reported streamRows rows is split, and what it
+// reported so far is queued right away, so the rows of a large code 5 or 6 result
+// are written while it is still being read, and never all held at once. Streaming
+// needs the lines to be run on the thread that writes their results, in file order
+public class ResultSink {
+
+    public enum Format { TEXT, JSON }
+
+    // Most results waiting to be written before a reporting thread has to wait
+    private static final int QUEUE_CAPACITY = 8192;
+    // Most results taken off the queue and written together
+    private static final int MAX_BATCH = 512;
+    // Queued by close to stop the writer thread
+    private static final Object END = new Object();
+
+    private static final ThreadLocal<LineResult> current = new ThreadLocal<>();
+
+    private static Format format = Format.TEXT;
+    // Results and notes waiting to be written, or null if the sink is not open
+    private static volatile BlockingQueue<Object> queue;
+    private static Thread writerThread;
+    private static Writer out;
+    private static boolean closeOut;
+    // Checks every written result against the in-memory backend, or null if the
+    // run is not a --backend=compare run
+    private static volatile DifferentialChecker checker;
+    // Rows a line collects before they are queued ahead of the rest of the line, or 0
+    // to collect the whole line
+    private static volatile int streamRows = 0;
+
+    // Starts the writer thread, writing in the given format to fileName, or to
+    // System.out if fileName is null
+    public static synchronized void open(Format outputFormat, String fileName) throws IOException {
+        if (queue != null) {
+            return;
+        }
+        format = outputFormat;
+        closeOut = fileName != null;
+        OutputStream stream = fileName != null ? Files.newOutputStream(Paths.get(fileName)) : System.out;
+        out = new BufferedWriter(new OutputStreamWriter(stream, Charset.defaultCharset()), 1 << 16);
+        queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        writerThread = new Thread(ResultSink::writeQueued, "result-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // Writes out every queued result and stops the writer thread
+    // Must be called before anything else is printed to System.out
+    public static synchronized void close() {
+        BlockingQueue<Object> closing = queue;
+        if (closing == null) {
+            return;
+        }
+        enqueue(closing, END);
+        try {
+            writerThread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        queue = null;
+        try {
+            if (closeOut) {
+                out.close();
+            } else {
+                out.flush();
+            }
+        } catch (IOException ioe) {
+            System.err.println("Exception: " + ioe);
+            System.err.println("Failed to write the results");
+        }
+    }
+
+    // Starts collecting the output of a line on the current thread
+    public static void begin(long lineNumber) {
+        LineStatus.reset();
+        current.set(new LineResult(lineNumber));
+    }
+
+    // Stops collecting the output of the line in progress on the current thread
+    // and returns it, with the outcome set to "error" if a statement failed
+    public static LineResult end(int code) {
+        LineResult result = current.get();
+        current.remove();
+        result.setCode(code);
+        if (LineStatus.failed()) {
+            result.setOutcome("error");
+        }
+        return result;
+    }
+
+    // Queues a finished line to be written, in the order write is called
+    public static void write(LineResult result) {
+        BlockingQueue<Object> open = queue;
+        if (open == null) {
+            System.out.print(format == Format.JSON ? result.toJson() + System.lineSeparator() : result.toText());
+        } else {
+            enqueue(open, result);
+        }
+        DifferentialChecker check = checker;
+        if (check != null) {
+            check.check(result);
+        }
+    }
+
+    // Has every result written from now on checked by the given checker, or by none
+    // if it is null
+    public static void checkWith(DifferentialChecker differentialChecker) {
+        checker = differentialChecker;
+    }
+
+    // Has every line queue its rows once it has collected the given number of them,
+    // or collect whole lines again if it is 0
+    public static void streamRows(int rows) {
+        streamRows = rows;
+    }
+
+    // Reports a line of text for the line in progress
+    public static void println(String message) {
+        LineResult result = current.get();
+        if (result != null) {
+            result.message(message);
+            return;
+        }
+        BlockingQueue<Object> open = queue;
+        if (open == null) {
+            System.out.println(message);
+            return;
+        }
+        enqueue(open, message);
+    }
+
+    // Reports one result row (an employee or department name) for the line in progress
+    public static void row(String row) {
+        LineResult result = current.get();
+        if (result != null) {
+            result.row(row);
+            int stream = streamRows;
+            if (stream > 0 && result.rowCount() >= stream) {
+                writePart(result.split());
+            }
+        } else {
+            println("\t" + row);
+        }
+    }
+
+    // Helper to queue the part of a streamed line reported so far
+    private static void writePart(LineResult part) {
+        BlockingQueue<Object> open = queue;
+        if (open == null) {
+            System.out.print(format == Format.JSON ? part.toJson() + System.lineSeparator() : part.toText());
+        } else {
+            enqueue(open, part);
+        }
+    }
+
+    // Reports that the line in progress was malformed
+    public static void invalid(String message) {
+        outcome("invalid", message);
+    }
+
+    // Reports that the line in progress named an employee, department or manager that does not exist
+    public static void notFound(String message) {
+        outcome("not_found", message);
+    }
+
+    // Reports that the line in progress tried to add an employee that already exists
+    public static void duplicate(String message) {
+        outcome("duplicate", message);
+    }
+
+    // Helper to set the outcome of the line in progress along with its message
+    private static void outcome(String outcome, String message) {
+        LineResult result = current.get();
+        if (result != null) {
+            result.setOutcome(outcome);
+        }
+        println(message);
+    }
+
+    // Helper to put a result on the queue, waiting while it is full
+    private static void enqueue(BlockingQueue<Object> open, Object item) {
+        try {
+            open.put(item);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Body of the writer thread, writes queued results until close is called
+    private static void writeQueued() {
+        List<Object> batch = new ArrayList<>(MAX_BATCH);
+        boolean failed = false;
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException ie) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            for (Object item : batch) {
+                if (item == END) {
+                    return;
+                }
+                // After a failed write the results are still taken off the queue,
+                // so the threads reporting them are never left waiting
+                if (failed) {
+                    continue;
+                }
+                try {
+                    writeItem(item);
+                } catch (IOException ioe) {
+                    System.err.println("Exception: " + ioe);
+                    System.err.println("Failed to write the results, the rest will be lost");
+                    failed = true;
+                }
+            }
+            batch.clear();
+            try {
+                if (!failed && queue.isEmpty()) {
+                    out.flush();
+                }
+            } catch (IOException ioe) {
+                System.err.println("Exception: " + ioe);
+                System.err.println("Failed to write the results, the rest will be lost");
+                failed = true;
+            }
+        }
+    }
+
+    // Helper to write one result or note in the chosen format
+    private static void writeItem(Object item) throws IOException {
+        if (item instanceof LineResult) {
+            LineResult result = (LineResult) item;
+            if (format == Format.JSON) {
+                out.write(result.toJson());
+                out.write(System.lineSeparator());
+            } else {
+                out.write(result.toText());
+            }
+            return;
+        }
+        String note = (String) item;
+        if (format == Format.JSON) {
+            StringBuilder json = new StringBuilder("{\"note\":");
+            appendJsonString(json, note);
+            out.write(json.append('}').toString());
+        } else {
+            out.write(note);
+        }
+        out.write(System.lineSeparator());
+    }
+
+    // Helper to write a string as a quoted JSON string
+    static void appendJsonString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,353 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+// Options for a run of JDBCProject, read from the command line arguments
+// Every option is of the form --name=value, and any option not given keeps
+// its default, so running with no arguments behaves exactly like before
+public class RunOptions {
+
+    // The ways of finding every employee under a manager for Transaction Code 5
+    //  BFS     - breadth first search in Java, with queries for every subordinate
+    //  CTE     - a single recursive query run on the server
+    //  COMPARE - runs both, prints the BFS result, and reports any difference
+    public enum HierarchyEngine { BFS, CTE, COMPARE }
+
+    // Where the transaction codes are run
+    //  JDBC    - against the MySQL tables
+    //  MEMORY  - against tables held in memory, without connecting to MySQL at all
+    //  COMPARE - against MySQL, with every result checked against the in-memory tables
+    public enum Backend { JDBC, MEMORY, COMPARE }
+
+    // Lines between commits of a checkpointed run, when no commit limit is given
+    private static final int DEFAULT_CHECKPOINT_LINES = 1000;
+
+    // File the database, user id and password are read from when it exists, unless
+    // --config names another one
+    static final String DEFAULT_CONFIG_FILE = "jdbcproject.properties";
+
+    // Number of consecutive code 2 lines to group into one batched insert
+    // 0 disables batching, and every code 2 line is inserted on its own
+    public int batchSize = 0;
+
+    // Whether statements are prepared on the MySQL server rather than emulated
+    // by the driver, so that the server also parses each statement only once
+    public boolean serverPreparedStatements = false;
+
+    // Number of threads, each with its own pooled connection, that process the
+    // transfile in parallel. 1 processes every line in order on one connection
+    public int threads = 1;
+
+    // Number of lines to group into one transaction, and the longest time in
+    // milliseconds to leave lines uncommitted. When both are 0 every statement
+    // is committed on its own (autocommit)
+    public int commitLines = 0;
+    public long commitMillis = 0;
+
+    // Engine used to find the employees under a manager for code 5 lines
+    public HierarchyEngine hierarchyEngine = HierarchyEngine.BFS;
+
+    // Number of rows of a code 5 or 6 result fetched through a server side cursor at
+    // a time, and written out before the next are fetched, 0 to read each result whole
+    public int streamRows = 0;
+
+    // Whether codes 5 and 6 are answered from an in-memory copy of the org chart
+    public boolean orgGraph = false;
+
+    // Whether codes 1-4 check if an ename or dept_name exists through a client side
+    // Bloom filter and LRU first, and only ask the database when those cannot tell
+    public boolean existenceCache = false;
+
+    // Whether codes 1-4 each run as one statement, relying on foreign key actions
+    // and affected row counts instead of checking for the row first
+    public boolean singleStatement = false;
+
+    // Whether lines, statements, rows, and latencies are counted for every
+    // transaction code and printed as a table at the end of the run
+    public boolean metrics = false;
+
+    // File to also write the counters to as JSON, or null for none
+    public String metricsFile = null;
+
+    // Seconds between reports of the counters while the run continues, 0 for none
+    public int metricsIntervalSeconds = 0;
+
+    // Number of consecutive code 2 lines from which a run is bulk loaded through
+    // LOAD DATA LOCAL INFILE, 0 disables bulk loading
+    public int bulkLoadRunLength = 0;
+
+    // Number of lines held back to look for inserts and deletes that cancel out or
+    // replace each other before they are run, 0 runs every line as it is read
+    public int writeWindow = 0;
+
+    // Whether a single connection run reads, checks, and runs the lines on separate
+    // threads, and whether the thread running them is a virtual thread (Java 21+)
+    public boolean pipeline = false;
+    public boolean virtualThreads = false;
+
+    // The transfile to process, or a directory of transfiles to process in name order
+    // Either may also be a compiled transfile, which is replayed
+    public String transfile = "transfile.txt";
+
+    // File to compile the transfile into, instead of running it, or null to run it
+    public String compileTo = null;
+
+    // Whether the position in each transfile is saved with every commit, and the
+    // tables kept at the end, so a run that stops part way can be resumed
+    public boolean checkpoint = false;
+
+    // Whether the transfile (or named pipe) is followed as more lines are written
+    // to it, until the run is stopped, instead of processed once
+    public boolean follow = false;
+
+    // Where the transaction codes are run
+    public Backend backend = Backend.JDBC;
+
+    // The database to connect to, a database name on localhost or a full JDBC
+    // connection string, or null to ask for the name of a database on localhost
+    public String primary = null;
+
+    // The user id and password to connect with, or null to ask for them
+    // Given on the command line, or else taken from the environment variables
+    // JDBCPROJECT_PRIMARY, JDBCPROJECT_USER and JDBCPROJECT_PASSWORD, or else from
+    // the primary, user and password of the config file
+    public String user = null;
+    public String password = null;
+    public String configFile = null;
+
+    // Whether the run starts as quickly as it can: it never asks for anything, reuses
+    // the tables an earlier fast start run set up without checking them again,
+    // prepares every statement before the first line, and at the end empties the
+    // tables instead of dropping them, so the next run can use them as they are
+    public boolean fastStart = false;
+
+    // Read only replicas of the database that codes 5 and 6 are read from, or null
+    // to read from the primary. Each is a database name on localhost or a full JDBC
+    // connection string, like the shards
+    public List<String> replicas = null;
+
+    // Whether a read on a replica first waits for it to apply the writes before it
+    public boolean readYourWrites = false;
+
+    // Databases the tables are split over, by hash of ename, or null to use the one
+    // database asked for at the start. Each is a database name on localhost or a
+    // full JDBC connection string
+    public List<String> shards = null;
+
+    // Format the result of every line is written in, and the file to write it to
+    // instead of the console, or null for the console
+    public ResultSink.Format outputFormat = ResultSink.Format.TEXT;
+    public String outputFile = null;
+
+    // Parses the given command line arguments into a set of options
+    // Unknown or malformed options are reported and then ignored
+    public static RunOptions parse(String[] args) {
+        RunOptions options = new RunOptions();
+        for (String arg : args) {
+            int equalsIndex = arg.indexOf('=');
+            if (!arg.startsWith("--") || equalsIndex < 0) {
+                System.out.println("Ignoring argument, options should be of the form --name=value: " + arg);
+                continue;
+            }
+            String name = arg.substring(2, equalsIndex);
+            String value = arg.substring(equalsIndex + 1);
+            try {
+                switch (name) {
+                    case "batch-size":
+                        options.batchSize = parseNonNegative(name, value);
+                        break;
+                    case "server-prepared":
+                        options.serverPreparedStatements = parseBoolean(name, value);
+                        break;
+                    case "threads":
+                        options.threads = Math.max(1, parseNonNegative(name, value));
+                        break;
+                    case "commit-every":
+                        options.commitLines = parseNonNegative(name, value);
+                        break;
+                    case "commit-millis":
+                        options.commitMillis = parseNonNegative(name, value);
+                        break;
+                    case "hierarchy":
+                        options.hierarchyEngine = parseEnum(HierarchyEngine.class, name, value);
+                        break;
+                    case "stream-rows":
+                        options.streamRows = parseNonNegative(name, value);
+                        break;
+                    case "org-graph":
+                        options.orgGraph = parseBoolean(name, value);
+                        break;
+                    case "write-window":
+                        options.writeWindow = parseNonNegative(name, value);
+                        break;
+                    case "existence-cache":
+                        options.existenceCache = parseBoolean(name, value);
+                        break;
+                    case "single-statement":
+                        options.singleStatement = parseBoolean(name, value);
+                        break;
+                    case "metrics":
+                        options.metrics = parseBoolean(name, value);
+                        break;
+                    case "metrics-file":
+                        options.metricsFile = value;
+                        options.metrics = true;
+                        break;
+                    case "metrics-interval":
+                        options.metricsIntervalSeconds = parseNonNegative(name, value);
+                        options.metrics |= options.metricsIntervalSeconds > 0;
+                        break;
+                    case "bulk-load":
+                        options.bulkLoadRunLength = parseNonNegative(name, value);
+                        break;
+                    case "pipeline":
+                        options.pipeline = parseBoolean(name, value);
+                        break;
+                    case "virtual-threads":
+                        options.virtualThreads = parseBoolean(name, value);
+                        break;
+                    case "primary":
+                        options.primary = value;
+                        break;
+                    case "user":
+                        options.user = value;
+                        break;
+                    case "password":
+                        options.password = value;
+                        break;
+                    case "config":
+                        options.configFile = value;
+                        break;
+                    case "fast-start":
+                        options.fastStart = parseBoolean(name, value);
+                        break;
+                    case "replicas":
+                        options.replicas = parseList(name, value);
+                        break;
+                    case "read-your-writes":
+                        options.readYourWrites = parseBoolean(name, value);
+                        break;
+                    case "shards":
+                        options.shards = parseList(name, value);
+                        break;
+                    case "compile":
+                        options.compileTo = value;
+                        break;
+                    case "transfile":
+                        options.transfile = value;
+                        break;
+                    case "checkpoint":
+                        options.checkpoint = parseBoolean(name, value);
+                        break;
+                    case "follow":
+                        options.follow = parseBoolean(name, value);
+                        break;
+                    case "backend":
+                        options.backend = parseEnum(Backend.class, name, value);
+                        break;
+                    case "output":
+                        options.outputFormat = parseEnum(ResultSink.Format.class, name, value);
+                        break;
+                    case "output-file":
+                        options.outputFile = value;
+                        break;
+                    default:
+                        System.out.println("Ignoring unknown option: " + arg);
+                }
+            } catch (IllegalArgumentException iae) {
+                System.out.println("Ignoring option " + arg + ", " + iae.getMessage());
+            }
+        }
+        // The checkpoint is saved with each commit, so a checkpointed run needs
+        // lines grouped into transactions
+        if (options.checkpoint && options.commitLines == 0 && options.commitMillis == 0) {
+            options.commitLines = DEFAULT_CHECKPOINT_LINES;
+        }
+        options.fillCredentials(System.getenv());
+        return options;
+    }
+
+    // Fills in the database, user id and password not given on the command line from
+    // the environment, and then from the config file
+    void fillCredentials(Map<String, String> environment) {
+        primary = primary != null ? primary : environment.get("JDBCPROJECT_PRIMARY");
+        user = user != null ? user : environment.get("JDBCPROJECT_USER");
+        password = password != null ? password : environment.get("JDBCPROJECT_PASSWORD");
+        if (primary != null && user != null && password != null) {
+            return;
+        }
+
+        Path config = Paths.get(configFile != null ? configFile : DEFAULT_CONFIG_FILE);
+        if (configFile == null && !Files.isRegularFile(config)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (Reader in = Files.newBufferedReader(config)) {
+            properties.load(in);
+        } catch (IOException ioe) {
+            System.out.println("Ignoring the config file " + config + ", " + ioe);
+            return;
+        }
+        primary = primary != null ? primary : properties.getProperty("primary");
+        user = user != null ? user : properties.getProperty("user");
+        password = password != null ? password : properties.getProperty("password");
+    }
+
+    // Helper to read an option that must be one of the constants of an enum
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String name, String value) {
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(value)) {
+                return constant;
+            }
+        }
+        throw new IllegalArgumentException(name + " must be one of " +
+                Arrays.toString(type.getEnumConstants()).toLowerCase(Locale.ROOT));
+    }
+
+    // Helper to read a true/false option
+    private static boolean parseBoolean(String name, String value) {
+        if (value.equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new IllegalArgumentException(name + " must be true or false");
+    }
+
+    // Helper to read a whole number option that may not be negative
+    private static int parseNonNegative(String name, String value) {
+        int parsed;
+        try {
+            parsed = Integer.parseInt(value);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException(name + " must be a whole number");
+        }
+        if (parsed < 0) {
+            throw new IllegalArgumentException(name + " must not be negative");
+        }
+        return parsed;
+    }
+
+    // Helper to read a comma separated list option, which must have at least one item
+    private static List<String> parseList(String name, String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException(name + " must list at least one item");
+        }
+        return items;
+    }
+}
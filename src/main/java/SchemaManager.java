@@ -0,0 +1,300 @@
+import java.sql.*;
+import java.util.*;
+
+// Creates the employee and department tables, or brings existing ones up to date
+// Every step checks information_schema first and only changes what is missing,
+// so running it against tables left by an earlier run is safe:
+//  - the tables are created if they do not exist
+//  - secondary indexes are added on employee.dept_name and department.mname, which
+//    codes 3, 5 and 6 (and the foreign key checks of code 1) look rows up by
+//  - in single statement mode, the mname foreign key is changed to ON DELETE SET
+//    NULL and the department delete trigger is created, if they are not already,
+//    and in any other mode the trigger is dropped if an earlier run left it
+//  - on a shard, there is no mname foreign key, since the manager may be an
+//    employee on another shard
+// Once the tables are ready, verifyAccessPaths runs EXPLAIN on every query the
+// handlers use, and warns about any that would scan a whole table
+public class SchemaManager {
+
+    static final String EMPLOYEE_DEPT_NAME_INDEX = "employee_dept_name";
+    static final String DEPARTMENT_MNAME_INDEX = "department_mname";
+    static final String DEPARTMENT_MNAME_FOREIGN_KEY = "department_mname_fk";
+    static final String DEPARTMENT_DELETE_TRIGGER = "department_delete_nulls_employees";
+
+    // Every query run by the transaction handlers that looks rows up by a column
+    static final String[] HOT_QUERIES = {
+            JDBCProject.COUNT_EMPLOYEE_SQL,
+            JDBCProject.DELETE_EMPLOYEE_SQL,
+            JDBCProject.NULL_EMPLOYEE_DEPARTMENT_SQL,
+            JDBCProject.SELECT_DEPARTMENT_EMPLOYEES_SQL,
+            JDBCProject.COUNT_DEPARTMENT_SQL,
+            JDBCProject.DELETE_DEPARTMENT_SQL,
+            JDBCProject.NULL_DEPARTMENT_MANAGER_SQL,
+            JDBCProject.COUNT_MANAGED_DEPARTMENTS_SQL,
+            JDBCProject.SELECT_MANAGED_DEPARTMENTS_SQL,
+            JDBCProject.SELECT_ALL_SUBORDINATES_SQL,
+            JDBCProject.STREAM_ALL_SUBORDINATES_SQL,
+    };
+
+    // Comment a fast start run leaves on the department table once the tables are set
+    // up, so the next fast start run can tell they are ready with a single query
+    // Each mode has its own marker, since single statement mode needs the trigger
+    // and the other modes must not have it
+    static final String SCHEMA_MARKER = "Set up by JDBCProject, schema 1";
+    static final String SINGLE_STATEMENT_MARKER = SCHEMA_MARKER + ", single statement";
+
+    // The name the recursive query gives its own rows. Each level of the recursion
+    // reads all of the rows found by the level before, so this is always a scan
+    private static final String RECURSIVE_RESULT_ALIAS = "s";
+
+    // Creates or updates the tables, indexes, foreign key and trigger the handlers need
+    public static void ensureSchema(Connection conn, boolean singleStatement) throws SQLException {
+        ensureSchema(conn, singleStatement, false);
+    }
+
+    // Creates or updates the tables of one shard of a sharded run, without (or
+    // dropping) the foreign key from department.mname
+    public static void ensureShardSchema(Connection conn) throws SQLException {
+        ensureSchema(conn, false, true);
+    }
+
+    private static void ensureSchema(Connection conn, boolean singleStatement, boolean shard) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            // Query to create the employee table
+            // ename is the primary key
+            // salary is numeric, so extra care must be taken when assign it's value
+            if (!tableExists(conn, "employee")) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS employee (\n" +
+                        "ename varchar(25),\n" +
+                        "dept_name varchar(25),\n" +
+                        "salary numeric(10, 0),\n" +
+                        "city varchar(25),\n" +
+                        "PRIMARY KEY (ename),\n" +
+                        "KEY " + EMPLOYEE_DEPT_NAME_INDEX + " (dept_name)\n" +
+                        ");");
+                System.out.println("Successfully created the employee table");
+            } else {
+                System.out.println("Using the existing employee table");
+            }
+
+            // Query to create the department table
+            // dept_name is the primary key
+            // mname is a foreign key referencing some employee in employee table
+            if (!tableExists(conn, "department")) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS department (\n" +
+                        "dept_name varchar(25),\n" +
+                        "mname varchar(25),\n" +
+                        "PRIMARY KEY (dept_name),\n" +
+                        "KEY " + DEPARTMENT_MNAME_INDEX + " (mname)" +
+                        (shard ? "" : ",\n" + foreignKeyDefinition(singleStatement)) + "\n" +
+                        ");");
+                System.out.println("Successfully created the department table");
+            } else {
+                System.out.println("Using the existing department table");
+            }
+
+            ensureIndex(conn, stmt, "employee", EMPLOYEE_DEPT_NAME_INDEX, "dept_name");
+            ensureIndex(conn, stmt, "department", DEPARTMENT_MNAME_INDEX, "mname");
+            if (shard) {
+                dropForeignKey(conn, stmt);
+            } else {
+                ensureForeignKey(conn, stmt, singleStatement);
+            }
+
+            // In single statement mode, deleting a department sets to null the dept_name
+            // of its employees on the server. This is a trigger rather than a foreign key,
+            // because employees may be added to a department that does not exist yet
+            if (singleStatement && !triggerExists(conn, DEPARTMENT_DELETE_TRIGGER)) {
+                stmt.executeUpdate("CREATE TRIGGER " + DEPARTMENT_DELETE_TRIGGER + "\n" +
+                        "AFTER DELETE ON department FOR EACH ROW\n" +
+                        "UPDATE employee SET dept_name = NULL WHERE dept_name = OLD.dept_name");
+                System.out.println("Successfully created the department delete trigger");
+            }
+            // Other modes must not have it: code 4 replaces a department by deleting
+            // and inserting it again, which would take away all of its employees
+            if (!singleStatement && triggerExists(conn, DEPARTMENT_DELETE_TRIGGER)) {
+                stmt.executeUpdate("DROP TRIGGER " + DEPARTMENT_DELETE_TRIGGER);
+                System.out.println("Dropped the department delete trigger left by a --single-statement run");
+            }
+        }
+    }
+
+    // Returns the comment on the department table, which holds the marker of the
+    // mode the tables were last set up for, or null if there is no department table
+    public static String marker(Connection conn) throws SQLException {
+        try (PreparedStatement comment = conn.prepareStatement("select table_comment from information_schema.tables " +
+                "where table_schema = database() and table_name = 'department'")) {
+            ResultSet rs = comment.executeQuery();
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    // Checks if marker says the tables are set up for the given mode
+    public static boolean isMarked(String marker, boolean singleStatement) {
+        return markerFor(singleStatement).equals(marker);
+    }
+
+    // Checks if marker is one a fast start run left, for either mode
+    public static boolean isAnyMarker(String marker) {
+        return isMarked(marker, false) || isMarked(marker, true);
+    }
+
+    // Marks the tables as set up for the given mode, once ensureSchema has run
+    public static void mark(Connection conn, boolean singleStatement) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE department COMMENT = '" + markerFor(singleStatement) + "'");
+        }
+    }
+
+    private static String markerFor(boolean singleStatement) {
+        return singleStatement ? SINGLE_STATEMENT_MARKER : SCHEMA_MARKER;
+    }
+
+    // Creates the table a checkpointed run saves its position in, if it does not exist
+    public static void ensureCheckpointTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(Checkpoint.CREATE_TABLE_SQL);
+            int fingerprintColumns = countMatches(conn, "select count(*) from information_schema.columns " +
+                    "where table_schema = database() and table_name = ? and column_name = ?",
+                    "transfile_checkpoint", "fingerprint");
+            if (fingerprintColumns == 0) {
+                stmt.executeUpdate(Checkpoint.ADD_FINGERPRINT_SQL);
+            }
+        }
+    }
+
+    // Runs EXPLAIN on every hot query, and prints a warning for each table that one
+    // of them would read in full rather than through an index
+    // Returns true if every query uses an index
+    public static boolean verifyAccessPaths(Connection conn) {
+        boolean allIndexed = true;
+        for (String sql : HOT_QUERIES) {
+            try (PreparedStatement explain = conn.prepareStatement("explain " + sql)) {
+                // The value looked up makes no difference to the plan, only its type does
+                for (int i = 1; i <= countParameters(sql); i++) {
+                    explain.setString(i, "");
+                }
+                ResultSet plan = explain.executeQuery();
+                while (plan.next()) {
+                    String table = plan.getString("table");
+                    if (table == null || table.startsWith("<") || table.equals(RECURSIVE_RESULT_ALIAS)) {
+                        continue;
+                    }
+                    if ("ALL".equalsIgnoreCase(plan.getString("type"))) {
+                        allIndexed = false;
+                        System.out.println("Warning: full scan of " + table + " in query: "
+                                + sql.replace('\n', ' '));
+                    }
+                }
+            } catch (SQLException sqle) {
+                System.out.println("Exception: " + sqle);
+                System.out.println("Could not check the query plan of: " + sql.replace('\n', ' '));
+                allIndexed = false;
+            }
+        }
+        if (allIndexed) {
+            System.out.println("Every hot query uses an index");
+        }
+        return allIndexed;
+    }
+
+    // Helper to write the foreign key from department.mname to employee
+    private static String foreignKeyDefinition(boolean singleStatement) {
+        return "CONSTRAINT " + DEPARTMENT_MNAME_FOREIGN_KEY + " FOREIGN KEY (mname) REFERENCES employee(ename)" +
+                (singleStatement ? " ON DELETE SET NULL" : "");
+    }
+
+    // Helper to add an index on column, unless some index already starts with it
+    // (such as the one MySQL made for a foreign key)
+    private static void ensureIndex(Connection conn, Statement stmt, String table, String index, String column)
+            throws SQLException {
+        int indexesOnColumn = countMatches(conn, "select count(*) from information_schema.statistics " +
+                "where table_schema = database() and table_name = ? and column_name = ? and seq_in_index = 1",
+                table, column);
+        if (indexesOnColumn > 0) {
+            return;
+        }
+        stmt.executeUpdate("ALTER TABLE " + table + " ADD INDEX " + index + " (" + column + ")");
+        System.out.println("Added index " + index + " on " + table + "(" + column + ")");
+    }
+
+    // Helper to drop the foreign key from department.mname to employee, if there is one
+    private static void dropForeignKey(Connection conn, Statement stmt) throws SQLException {
+        String existingName = foreignKeyName(conn);
+        if (existingName != null) {
+            stmt.executeUpdate("ALTER TABLE department DROP FOREIGN KEY `" + existingName + "`");
+            System.out.println("Dropped foreign key " + existingName + " on department(mname) for sharding");
+        }
+    }
+
+    // Helper to find the name of the foreign key from department.mname to employee,
+    // or null if there is none
+    private static String foreignKeyName(Connection conn) throws SQLException {
+        try (PreparedStatement foreignKeys = conn.prepareStatement("select constraint_name " +
+                "from information_schema.referential_constraints where constraint_schema = database() " +
+                "and table_name = 'department' and referenced_table_name = 'employee'")) {
+            ResultSet rs = foreignKeys.executeQuery();
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    // Helper to make sure department.mname references employee, with ON DELETE SET
+    // NULL in single statement mode. A foreign key with the wrong delete rule is
+    // dropped and added again, other modes accept whatever rule is already there
+    private static void ensureForeignKey(Connection conn, Statement stmt, boolean singleStatement)
+            throws SQLException {
+        String existingName = null;
+        String deleteRule = null;
+        try (PreparedStatement foreignKeys = conn.prepareStatement("select constraint_name, delete_rule " +
+                "from information_schema.referential_constraints where constraint_schema = database() " +
+                "and table_name = 'department' and referenced_table_name = 'employee'")) {
+            ResultSet rs = foreignKeys.executeQuery();
+            if (rs.next()) {
+                existingName = rs.getString(1);
+                deleteRule = rs.getString(2);
+            }
+        }
+        if (existingName != null && (!singleStatement || "SET NULL".equalsIgnoreCase(deleteRule))) {
+            return;
+        }
+        if (existingName != null) {
+            stmt.executeUpdate("ALTER TABLE department DROP FOREIGN KEY `" + existingName + "`");
+        }
+        stmt.executeUpdate("ALTER TABLE department ADD " + foreignKeyDefinition(singleStatement));
+        System.out.println("Added foreign key " + DEPARTMENT_MNAME_FOREIGN_KEY + " on department(mname)");
+    }
+
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        return countMatches(conn, "select count(*) from information_schema.tables " +
+                "where table_schema = database() and table_name = ?", table) > 0;
+    }
+
+    private static boolean triggerExists(Connection conn, String trigger) throws SQLException {
+        return countMatches(conn, "select count(*) from information_schema.triggers " +
+                "where trigger_schema = database() and trigger_name = ?", trigger) > 0;
+    }
+
+    // Helper to run a count(*) query with the given parameters
+    private static int countMatches(Connection conn, String sql, String... values) throws SQLException {
+        try (PreparedStatement count = conn.prepareStatement(sql)) {
+            for (int i = 0; i < values.length; i++) {
+                count.setString(i + 1, values[i]);
+            }
+            ResultSet rs = count.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    // Helper to count the ? placeholders of a query, none of the hot queries has a
+    // ? inside a string
+    private static int countParameters(String sql) {
+        int count = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            if (sql.charAt(i) == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
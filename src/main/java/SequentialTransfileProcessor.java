@@ -0,0 +1,154 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// Processes every line of the transfile on a single connection, in file order
+// This is the default way a transfile is run. If batching was enabled, runs of
+// code 2 lines are handed to an EmployeeBatchInserter instead (or to an
+// EmployeeBulkLoader, if bulk loading was enabled), and if
+// transaction grouping was enabled, lines are committed in groups through a
+// TransactionGroup rather than one statement at a time
+public class SequentialTransfileProcessor implements TransfileProcessor {
+
+    private final Connection conn;
+    // Batches runs of code 2 lines, or null if batching is disabled
+    private final EmployeeBatchInserter batcher;
+    // Bulk loads long runs of code 2 lines, or null if bulk loading is disabled
+    private final EmployeeBulkLoader bulkLoader;
+    // Groups lines into larger transactions, or null to stay in autocommit
+    private final TransactionGroup group;
+    // Position in the transfile saved with every commit, or null if not checkpointing
+    private final Checkpoint checkpoint;
+
+    public SequentialTransfileProcessor(Connection conn, RunOptions options) {
+        this(conn, options, null);
+    }
+
+    // Also keeps checkpoint at the position of the first line not yet committed
+    public SequentialTransfileProcessor(Connection conn, RunOptions options, Checkpoint checkpoint) {
+        this.conn = conn;
+        this.checkpoint = checkpoint;
+        this.batcher = options.batchSize > 0 ? new EmployeeBatchInserter(conn, options.batchSize) : null;
+        this.bulkLoader = options.bulkLoadRunLength > 0
+                ? new EmployeeBulkLoader(conn, options.bulkLoadRunLength, batcher) : null;
+        this.group = openTransactionGroup(conn, options, checkpoint);
+    }
+
+    @Override
+    public void process(TransfileLine line) {
+        // Consecutive code 2 lines are collected into the batch, any
+        // other line first flushes it so output stays in file order
+        if (bulkLoader != null) {
+            if (line.length() > 0 && line.firstChar() == '2') {
+                bulkLoader.add(line);
+                advanceCheckpoint(line);
+                if (group != null) {
+                    group.linesDone(1);
+                }
+                return;
+            }
+            bulkLoader.flush();
+        } else if (batcher != null) {
+            if (line.length() > 0 && line.firstChar() == '2') {
+                batcher.add(line);
+                advanceCheckpoint(line);
+                if (group != null) {
+                    group.linesDone(1);
+                }
+                return;
+            }
+            batcher.flush();
+        }
+        if (group != null) {
+            group.runLine(line, () -> {
+                JDBCProject.processLine(conn, line);
+                advanceCheckpoint(line);
+            });
+        } else {
+            JDBCProject.processLine(conn, line);
+        }
+    }
+
+    // Reports a line whose result was already worked out without the database, such
+    // as a malformed line rejected by the PipelinedTransfileProcessor. Any batched
+    // lines are finished first, so the result stays in file order
+    public void processResolved(TransfileLine line, LineResult result) {
+        if (bulkLoader != null) {
+            bulkLoader.flush();
+        } else if (batcher != null) {
+            batcher.flush();
+        }
+        ResultSink.write(result);
+        advanceCheckpoint(line);
+        if (group != null) {
+            group.linesDone(1);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (bulkLoader != null) {
+            bulkLoader.flush();
+        } else if (batcher != null) {
+            batcher.flush();
+        }
+        if (checkpoint != null) {
+            checkpoint.pendingDone();
+        }
+        if (group != null) {
+            group.commitIfPending();
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (bulkLoader != null) {
+            bulkLoader.flush();
+        } else if (batcher != null) {
+            batcher.flush();
+        }
+        // Every batched line is in now, so the position moves past them before it is
+        // saved, even for a followed file that is never marked finished
+        if (checkpoint != null) {
+            checkpoint.pendingDone();
+            checkpoint.fileFinished();
+        }
+        if (group != null) {
+            group.finish();
+        }
+    }
+
+    // Helper to move the checkpoint past line, or to the first line still waiting in
+    // a batch, which has not been inserted yet
+    private void advanceCheckpoint(TransfileLine line) {
+        if (checkpoint == null) {
+            return;
+        }
+        TransfileLine firstPending = null;
+        if (bulkLoader != null) {
+            firstPending = bulkLoader.firstPending();
+        } else if (batcher != null) {
+            firstPending = batcher.firstPending();
+        }
+        if (firstPending != null) {
+            checkpoint.linePending(firstPending, line);
+        } else {
+            checkpoint.linePassed(line);
+        }
+    }
+
+    // Helper to start grouping lines into transactions, if either commit limit was given
+    // If the connection cannot leave autocommit, every line is committed on its own as before
+    private static TransactionGroup openTransactionGroup(Connection conn, RunOptions options,
+                                                         Checkpoint checkpoint) {
+        if (options.commitLines == 0 && options.commitMillis == 0) {
+            return null;
+        }
+        try {
+            return new TransactionGroup(conn, options.commitLines, options.commitMillis, checkpoint);
+        } catch (SQLException sqle) {
+            ResultSink.println("Exception: " + sqle);
+            ResultSink.println("Failed to turn off autocommit, every line will be committed on its own");
+            return null;
+        }
+    }
+}
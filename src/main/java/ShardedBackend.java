@@ -0,0 +1,306 @@
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Runs the transaction codes against the tables split over several databases
+// (shards), for --shards
+//  - every employee row lives on one shard, picked by a hash of its case folded
+//    ename, so "Mary" and "mary" always land on the same shard, where the primary
+//    key still rejects the duplicate
+//  - every department row lives on the first shard, the department shard
+// Codes 1, 2 and 4 go to the shard that owns the ename (plus the department shard
+// for the department rows they change), and code 3 sets to null the dept_name of
+// the department's employees on every shard at once. Code 5 walks the hierarchy
+// one level at a time, looking up the employees of each level's departments on
+// every shard in parallel and merging them. Code 6 only reads departments, so it
+// runs on the department shard alone
+// A manager may live on another shard than the department table, so the shards
+// have no foreign key from department.mname, and the checks it made are done here
+// A line that touches more than one shard is not atomic across them
+public class ShardedBackend implements TransactionBackend, AutoCloseable {
+
+    private final List<Connection> shards;
+    private final Connection departmentShard;
+    // Runs the statements of a fan out, one thread per shard
+    private final ExecutorService fanOut;
+
+    // The first connection holds the department table
+    public ShardedBackend(List<Connection> shards) {
+        this.shards = shards;
+        this.departmentShard = shards.get(0);
+        this.fanOut = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "shard-fan-out");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Index of the shard that owns the given ename
+    public static int shardOf(String ename, int shardCount) {
+        int hash = Collation.fold(ename).hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shardCount);
+    }
+
+    @Override
+    public void deleteEmployee(String ename) {
+        Connection owner = owner(ename);
+        // Check if an employee of the given name even exists, before trying to remove them
+        try {
+            if (!exists(owner, JDBCProject.COUNT_EMPLOYEE_SQL, ename)) {
+                ResultSink.notFound("Not Found: " + ename);
+                return;
+            }
+            // Set to NULL the mname of all departments the employee managed
+            try {
+                PreparedStatement updateDept = StatementCache.prepare(departmentShard,
+                        JDBCProject.NULL_DEPARTMENT_MANAGER_SQL);
+                updateDept.setString(1, ename);
+                updateDept.executeUpdate();
+            } catch (SQLException sqle) {
+                LineStatus.fail();
+                ResultSink.println("Exception: " + sqle);
+                ResultSink.println("Error when trying to null department managers before the associated " +
+                        "employee was deleted");
+            }
+            try {
+                PreparedStatement deleteEmp = StatementCache.prepare(owner, JDBCProject.DELETE_EMPLOYEE_SQL);
+                deleteEmp.setString(1, ename);
+                deleteEmp.executeUpdate();
+                ResultSink.println("Deleted Employee: " + ename);
+            } catch (SQLException sqle) {
+                LineStatus.fail();
+                ResultSink.println("Exception: " + sqle);
+                ResultSink.println("Error when attempting to delete the employee: " + ename);
+            }
+        } catch (SQLException sqle) {
+            LineStatus.fail();
+            ResultSink.println("Exception: " + sqle);
+            ResultSink.println("Error when checking if an employee by the name of: " + ename + " exists");
+        }
+    }
+
+    @Override
+    public void insertEmployee(String ename, String dept_name, String salary, String city) {
+        // Everything code 2 touches is on the shard that owns the ename
+        JDBCProject.insertEmployee(owner(ename), ename, dept_name, salary, city);
+    }
+
+    @Override
+    public void deleteDepartment(String dept_name) {
+        // Check if a department of the given name exists
+        try {
+            if (!exists(departmentShard, JDBCProject.COUNT_DEPARTMENT_SQL, dept_name)) {
+                ResultSink.notFound("Not Found: " + dept_name);
+                return;
+            }
+            try {
+                PreparedStatement deleteDept = StatementCache.prepare(departmentShard,
+                        JDBCProject.DELETE_DEPARTMENT_SQL);
+                deleteDept.setString(1, dept_name);
+                deleteDept.executeUpdate();
+                ResultSink.println("Deleted: " + dept_name + " Department");
+            } catch (SQLException sqle) {
+                LineStatus.fail();
+                ResultSink.println("Exception: " + sqle);
+                ResultSink.println("Error when attempting to delete department: " + dept_name);
+            }
+            // The employees of the department may be on any shard
+            try {
+                onEveryShard(shard -> {
+                    PreparedStatement updateEmp = StatementCache.prepare(shard,
+                            JDBCProject.NULL_EMPLOYEE_DEPARTMENT_SQL);
+                    updateEmp.setString(1, dept_name);
+                    updateEmp.executeUpdate();
+                    return Collections.emptyList();
+                });
+            } catch (SQLException sqle) {
+                LineStatus.fail();
+                ResultSink.println("Exception: " + sqle);
+                ResultSink.println("Error when attempting to set to null the dept_name of every employee in the " +
+                        " now deleted " + dept_name + " department");
+            }
+        } catch (SQLException sqle) {
+            LineStatus.fail();
+            ResultSink.println("Exception: " + sqle);
+            ResultSink.println("Error when checking if department: " + dept_name + " exists");
+        }
+    }
+
+    @Override
+    public void insertDepartment(String dept_name, String mname) {
+        // Check that there is an employee with the given manager name, on its own shard
+        try {
+            if (!exists(owner(mname), JDBCProject.COUNT_EMPLOYEE_SQL, mname)) {
+                ResultSink.notFound("Manager name does not exist: " + mname);
+                return;
+            }
+
+            // If the department already exists, delete it
+            try {
+                if (exists(departmentShard, JDBCProject.COUNT_DEPARTMENT_SQL, dept_name)) {
+                    ResultSink.println("Department already exists, deleting: " + dept_name);
+                    try {
+                        PreparedStatement deleteDept = StatementCache.prepare(departmentShard,
+                                JDBCProject.DELETE_DEPARTMENT_SQL);
+                        deleteDept.setString(1, dept_name);
+                        deleteDept.executeUpdate();
+                    } catch (SQLException sqle) {
+                        LineStatus.fail();
+                        ResultSink.println("Error deleting the department, Exception: " + sqle);
+                    }
+                }
+            } catch (SQLException sqle) {
+                LineStatus.fail();
+                ResultSink.println("Error checking if the department Exists," + dept_name +
+                        "\nException: " + sqle);
+            }
+
+            try {
+                PreparedStatement insertDept = StatementCache.prepare(departmentShard,
+                        JDBCProject.INSERT_DEPARTMENT_SQL);
+                insertDept.setString(1, dept_name);
+                insertDept.setString(2, mname);
+                insertDept.executeUpdate();
+                ResultSink.println("Added department: " + dept_name + " " + mname);
+            } catch (SQLException sqle) {
+                LineStatus.fail();
+                ResultSink.println("Error inserting the department, Exception: " + sqle);
+            }
+        } catch (SQLException sqle) {
+            LineStatus.fail();
+            ResultSink.println("Error checking if the name exists, Exception: " + sqle);
+        }
+    }
+
+    @Override
+    public void listEmployeesUnder(String mname) {
+        HashSet<String> employees = new HashSet<>();
+        try {
+            List<String> departments = managedBy(Collections.singletonList(mname));
+            // If there are no departments managed by the manager, return
+            if (departments.isEmpty()) {
+                ResultSink.notFound("No department managed by the given name: " + mname);
+                return;
+            }
+            // Breadth first, one level of the hierarchy per round: the employees of
+            // this level's departments, from every shard at once, are the managers
+            // whose departments make up the next level
+            while (!departments.isEmpty()) {
+                List<String> levelDepartments = departments;
+                List<String> managers = new ArrayList<>();
+                for (String emp : onEveryShard(shard -> employeesIn(shard, levelDepartments))) {
+                    // Only employees not already accounted for are searched again,
+                    // which also ends a cycle in the hierarchy
+                    if (employees.add(emp)) {
+                        managers.add(emp);
+                    }
+                }
+                departments = managedBy(managers);
+            }
+        } catch (SQLException sqle) {
+            LineStatus.fail();
+            ResultSink.println("Exception: " + sqle);
+        }
+
+        // Remove mname, as a manager is not under themself
+        employees.remove(mname);
+
+        // If all the departments managed by mname contain only mname as their sole employee
+        if (employees.isEmpty()) {
+            ResultSink.println("No employees directly or indirectly under " + mname);
+        }
+        ResultSink.println("All employees directly and indirectly under " + mname + ":");
+        for (String emp : employees) {
+            ResultSink.row(emp);
+        }
+    }
+
+    @Override
+    public void listDepartments(String mname) {
+        // Every department is on the department shard
+        JDBCProject.listDepartments(departmentShard, mname);
+    }
+
+    // Stops the fan out threads, the connections are closed by their owner
+    @Override
+    public void close() {
+        fanOut.shutdownNow();
+    }
+
+    // Helper to find the connection of the shard that owns the given ename
+    private Connection owner(String ename) {
+        return shards.get(shardOf(ename, shards.size()));
+    }
+
+    // Helper to find the departments managed by any of the given managers
+    private List<String> managedBy(List<String> managers) throws SQLException {
+        List<String> departments = new ArrayList<>();
+        for (String manager : managers) {
+            PreparedStatement getDepts = StatementCache.prepare(departmentShard,
+                    JDBCProject.SELECT_MANAGED_DEPARTMENTS_SQL);
+            getDepts.setString(1, manager);
+            ResultSet rs = getDepts.executeQuery();
+            while (rs.next()) {
+                departments.add(rs.getString(1));
+            }
+        }
+        return departments;
+    }
+
+    // Helper to find the employees of the given departments on one shard
+    private static List<String> employeesIn(Connection shard, List<String> departments) throws SQLException {
+        List<String> employees = new ArrayList<>();
+        for (String dept_name : departments) {
+            PreparedStatement getEmps = StatementCache.prepare(shard, JDBCProject.SELECT_DEPARTMENT_EMPLOYEES_SQL);
+            getEmps.setString(1, dept_name);
+            ResultSet rs = getEmps.executeQuery();
+            while (rs.next()) {
+                employees.add(rs.getString(1));
+            }
+        }
+        return employees;
+    }
+
+    // Helper to run a count query for name, returning whether it counted any row
+    private static boolean exists(Connection shard, String countSql, String name) throws SQLException {
+        PreparedStatement count = StatementCache.prepare(shard, countSql);
+        count.setString(1, name);
+        ResultSet rs = count.executeQuery();
+        rs.next();
+        return rs.getInt(1) > 0;
+    }
+
+    // The work of a fan out on one shard
+    private interface ShardQuery {
+        List<String> run(Connection shard) throws SQLException;
+    }
+
+    // Helper to run query on every shard in parallel, and merge what they return
+    // Each shard's connection is only used by one thread at a time
+    private List<String> onEveryShard(ShardQuery query) throws SQLException {
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (Connection shard : shards) {
+            results.add(fanOut.submit(() -> query.run(shard)));
+        }
+        List<String> merged = new ArrayList<>();
+        SQLException failure = null;
+        for (Future<List<String>> result : results) {
+            try {
+                merged.addAll(result.get());
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof SQLException) {
+                    failure = (SQLException) ee.getCause();
+                } else {
+                    throw new IllegalStateException("Fan out to a shard failed", ee.getCause());
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a shard", ie);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,125 @@
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Registry of prepared statements, kept separately for every Connection
+// Each distinct SQL string is prepared once per connection, and the same
+// PreparedStatement is handed back on every later line that runs it, instead
+// of the driver (or server) parsing the same query again
+// Statements handed out by the cache belong to it, and must not be closed by
+// the caller. They are closed together when the connection is released
+public class StatementCache {
+
+    // The cache of every open connection
+    private static final Map<Connection, StatementCache> caches =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    // Hits and misses summed over every connection, for the end of run report
+    private static final AtomicLong totalHits = new AtomicLong();
+    private static final AtomicLong totalMisses = new AtomicLong();
+
+    private final Connection conn;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+    private long hits = 0;
+    private long misses = 0;
+
+    private StatementCache(Connection conn) {
+        this.conn = conn;
+    }
+
+    // Returns the statement cache of the given connection, creating it on first use
+    public static StatementCache forConnection(Connection conn) {
+        synchronized (caches) {
+            StatementCache cache = caches.get(conn);
+            if (cache == null) {
+                cache = new StatementCache(conn);
+                caches.put(conn, cache);
+            }
+            return cache;
+        }
+    }
+
+    // Returns the prepared statement for sql on the given connection
+    // Shorthand for forConnection(conn).get(sql)
+    public static PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        return forConnection(conn).get(sql);
+    }
+
+    // Returns the prepared statement for sql, preparing it only the first time
+    // Parameters left over from the previous use are cleared
+    public synchronized PreparedStatement get(String sql) throws SQLException {
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt != null && !stmt.isClosed()) {
+            hits++;
+            totalHits.incrementAndGet();
+            stmt.clearParameters();
+            return stmt;
+        }
+        misses++;
+        totalMisses.incrementAndGet();
+        stmt = conn.prepareStatement(sql);
+        // Count what the statement runs, if metrics are being collected
+        if (Metrics.isEnabled()) {
+            stmt = Metrics.instrument(stmt);
+        }
+        statements.put(sql, stmt);
+        return stmt;
+    }
+
+    // Prepares every one of the given statements on the connection ahead of time, so
+    // the first lines that run them do not wait for them to be prepared
+    public static void warm(Connection conn, List<String> sqls) throws SQLException {
+        StatementCache cache = forConnection(conn);
+        for (String sql : sqls) {
+            cache.get(sql);
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    // Closes every statement cached for the given connection
+    // Should be called before the connection itself is closed
+    public static void close(Connection conn) {
+        StatementCache cache;
+        synchronized (caches) {
+            cache = caches.remove(conn);
+        }
+        if (cache == null) {
+            return;
+        }
+        synchronized (cache) {
+            for (PreparedStatement stmt : cache.statements.values()) {
+                try {
+                    stmt.close();
+                } catch (SQLException sqle) {
+                    System.out.println("Exception: " + sqle);
+                    System.out.println("Failed to close a cached statement");
+                }
+            }
+            cache.statements.clear();
+        }
+    }
+
+    public static long getTotalHits() {
+        return totalHits.get();
+    }
+
+    public static long getTotalMisses() {
+        return totalMisses.get();
+    }
+
+    // Summary of the hits and misses over every connection, printed at the end of a run
+    public static String report() {
+        long hitCount = totalHits.get();
+        long missCount = totalMisses.get();
+        long lookups = hitCount + missCount;
+        double hitRate = lookups == 0 ? 0 : 100.0 * hitCount / lookups;
+        return String.format("Statement cache: %d hits, %d misses (%.1f%% hit rate)", hitCount, missCount, hitRate);
+    }
+}
@@ -0,0 +1,28 @@
+// What each of the six transaction codes does, once processLine has checked the
+// form of the line. Every method reports its result through the ResultSink, the
+// same messages whichever backend runs it:
+//  - JdbcBackend runs the codes against the MySQL tables
+//  - InMemoryBackend runs them against hash maps in memory, for dry runs of a
+//    transfile and for checking the JDBC results with --backend=compare
+public interface TransactionBackend {
+
+    // Transaction Code 1, deletes an employee, and sets to null the manager of
+    // every department they managed
+    void deleteEmployee(String ename);
+
+    // Transaction Code 2, adds an employee unless one of the same name exists
+    void insertEmployee(String ename, String dept_name, String salary, String city);
+
+    // Transaction Code 3, deletes a department, and sets to null the dept_name of
+    // every employee in it
+    void deleteDepartment(String dept_name);
+
+    // Transaction Code 4, adds (or replaces) a department, if the manager is an employee
+    void insertDepartment(String dept_name, String mname);
+
+    // Transaction Code 5, lists every employee directly and indirectly under mname
+    void listEmployeesUnder(String mname);
+
+    // Transaction Code 6, lists every department managed by mname
+    void listDepartments(String mname);
+}
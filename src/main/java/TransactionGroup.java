@@ -0,0 +1,154 @@
+import java.sql.*;
+
+// Groups the lines of the transfile into larger transactions
+// Instead of committing every statement on its own (autocommit), the connection
+// commits once every commitLines lines, or once commitMillis milliseconds have
+// passed since the last commit, whichever comes first. Lines that run more than
+// one statement (codes 1, 3 and 4) are run inside a savepoint, so if one of their
+// statements fails, only that line's statements are rolled back and the line is
+// never left half applied. Every other line is a single statement, which MySQL
+// already rolls back on its own when it fails
+public class TransactionGroup {
+
+    // Name of the savepoint set before each multi-statement line
+    // Setting a savepoint of the same name replaces the previous one, so they
+    // never pile up inside a large transaction
+    private static final String LINE_SAVEPOINT = "transfile_line";
+
+    private final Connection conn;
+    private final int commitLines;
+    private final long commitMillis;
+    // Saved with every commit, or null if the run is not checkpointed
+    private final Checkpoint checkpoint;
+
+    private int linesSinceCommit = 0;
+    private long lastCommitTime;
+
+    // commitLines or commitMillis may be 0, meaning that limit is not used
+    public TransactionGroup(Connection conn, int commitLines, long commitMillis) throws SQLException {
+        this(conn, commitLines, commitMillis, null);
+    }
+
+    // Also saves the given checkpoint as part of every commit, if it is not null
+    public TransactionGroup(Connection conn, int commitLines, long commitMillis, Checkpoint checkpoint)
+            throws SQLException {
+        this.conn = conn;
+        this.checkpoint = checkpoint;
+        this.commitLines = commitLines;
+        this.commitMillis = commitMillis;
+        conn.setAutoCommit(false);
+        lastCommitTime = System.currentTimeMillis();
+    }
+
+    // Runs the work for one line of the transfile inside the current transaction
+    // Commits afterwards if the line or time limit has been reached
+    public void runLine(TransfileLine line, Runnable work) {
+        runLine(line, LineValidator.transcodeOf(line), work);
+    }
+
+    // Runs the work for one line of a compiled transfile, the same as a text line
+    public void runLine(CompiledTransfile.Line line, Runnable work) {
+        runLine(line, line.code(), work);
+    }
+
+    // Helper to run a line of the given transaction code, which is only printed
+    // (through its toString) if the line is rolled back
+    private void runLine(Object line, int transcode, Runnable work) {
+        Savepoint savepoint = null;
+        if (needsSavepoint(transcode)) {
+            try {
+                savepoint = conn.setSavepoint(LINE_SAVEPOINT);
+            } catch (SQLException sqle) {
+                ResultSink.println("Exception: " + sqle);
+                ResultSink.println("Failed to set a savepoint, the line will not be rolled back if it fails");
+            }
+        }
+
+        LineStatus.reset();
+        work.run();
+
+        if (savepoint != null && LineStatus.failed()) {
+            try {
+                conn.rollback(savepoint);
+                ResultSink.println("Rolled back the statements of the failed line: " + line);
+            } catch (SQLException sqle) {
+                ResultSink.println("Exception: " + sqle);
+                ResultSink.println("Failed to roll back the line: " + line);
+            }
+        }
+        linesDone(1);
+    }
+
+    // Counts lines that were processed outside of runLine, such as a batch of
+    // code 2 lines, and commits if a limit has been reached
+    public void linesDone(int count) {
+        linesSinceCommit += count;
+        commitIfDue();
+    }
+
+    // Commits if commitLines lines or commitMillis milliseconds have gone by
+    // since the last commit
+    public void commitIfDue() {
+        boolean linesReached = commitLines > 0 && linesSinceCommit >= commitLines;
+        boolean timeReached = commitMillis > 0 && linesSinceCommit > 0
+                && System.currentTimeMillis() - lastCommitTime >= commitMillis;
+        if (linesReached || timeReached) {
+            commit();
+        }
+    }
+
+    // Commits if any line has been processed since the last commit
+    public void commitIfPending() {
+        if (linesSinceCommit > 0) {
+            commit();
+        }
+    }
+
+    // Commits every line processed since the last commit
+    // With a checkpoint, a failed commit stops the run, since carrying on would save
+    // a later checkpoint past the lines that were just rolled back
+    public void commit() {
+        try {
+            if (checkpoint != null) {
+                checkpoint.save(conn);
+            }
+            conn.commit();
+        } catch (SQLException sqle) {
+            ResultSink.println("Exception: " + sqle);
+            ResultSink.println("Failed to commit the last " + linesSinceCommit + " lines, rolling them back");
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackException) {
+                ResultSink.println("Exception: " + rollbackException);
+            }
+            // The org graph and existence caches already have the changes of the rolled back lines
+            JDBCProject.invalidateClientCopies();
+            if (checkpoint != null) {
+                throw new IllegalStateException("Stopping at the failed commit of " + checkpoint.getFileName()
+                        + ", run again to resume from the last checkpoint", sqle);
+            }
+        }
+        linesSinceCommit = 0;
+        lastCommitTime = System.currentTimeMillis();
+    }
+
+    // Commits any remaining lines, and puts the connection back into autocommit
+    public void finish() {
+        commit();
+        try {
+            conn.setAutoCommit(true);
+        } catch (SQLException sqle) {
+            ResultSink.println("Exception: " + sqle);
+        }
+    }
+
+    // Helper to check if a line runs more than one statement that changes the
+    // database, these are the delete employee, delete department and insert
+    // department lines, unless they are run as a single statement
+    private static boolean needsSavepoint(int transcode) {
+        if (JDBCProject.singleStatement) {
+            return false;
+        }
+        return transcode == 1 || transcode == 3 || transcode == 4;
+    }
+}
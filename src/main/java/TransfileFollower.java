@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Reads the lines of a transfile that is still being written to, for --follow
+// Once the end of the file is reached, it waits for more lines to be appended
+// instead of stopping. The file is polled every millisecond at first, and less
+// often the longer it stays idle (up to MAX_POLL_MILLIS), so a new line is picked
+// up within milliseconds without spinning. A line is only handed out once its line
+// separator has been written, so a half written line is never run
+// If the file is replaced (rotated) or truncated, the new file is read from the start
+// A named pipe is read as soon as anything is written to it, and is also opened for
+// writing, so writers can come and go without the end of the file ever being seen
+public class TransfileFollower implements AutoCloseable {
+
+    // Longest time to wait between checks of an idle file
+    private static final long MAX_POLL_MILLIS = 20;
+    // Longest time the shutdown hook waits for main to commit and clean up
+    private static final long SHUTDOWN_WAIT_SECONDS = 60;
+
+    // Set once the JVM is shutting down, after which next returns false
+    private static volatile boolean stopRequested = false;
+    // Counted down by main once the followed file is committed and closed
+    private static final CountDownLatch cleanedUp = new CountDownLatch(1);
+    // The follower in use, so the shutdown hook can wake it from a blocking read
+    private static volatile TransfileFollower current;
+
+    private final Path path;
+    private TransfileReader reader;
+    private boolean pipe;
+    // Identity of the open file, to tell when the path is given a new file
+    private Object fileKey;
+    // Where to start in the file when it is first opened, for a checkpointed run
+    private long startOffset = 0;
+    private long linesBefore = 0;
+    // Whether a line was handed out since whenIdle was last run
+    private boolean unflushed = false;
+
+    public TransfileFollower(Path path) {
+        this.path = path;
+        current = this;
+    }
+
+    // Stops every follower when the JVM is asked to shut down (Ctrl-C or kill), and
+    // holds the shutdown until main calls cleanedUp, so the lines already read are
+    // committed before the JVM exits
+    public static void installShutdownHook() {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopRequested = true;
+            TransfileFollower follower = current;
+            if (follower != null && follower.pipe) {
+                // Closing the channel wakes the read that is waiting on the pipe
+                follower.closeQuietly();
+            }
+            try {
+                cleanedUp.await(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }, "follow-shutdown"));
+    }
+
+    // Called by main once it has finished with the followed file, and just before
+    // it exits, so the shutdown hook lets the JVM exit
+    public static void cleanedUp() {
+        cleanedUp.countDown();
+    }
+
+    // Starts from the line at byte offset of the file, counted as line linesBefore + 1
+    // Ignored for a named pipe, which can only be read from where it is
+    public void seek(long offset, long linesBefore) {
+        this.startOffset = offset;
+        this.linesBefore = linesBefore;
+    }
+
+    // Reads the next line into line, waiting for one to be appended if needed
+    // whenIdle is run once each time every line written so far has been read, before
+    // waiting, so lines that are held back (such as a batch) can be applied then
+    // Returns false only once the JVM is shutting down
+    public boolean next(TransfileLine line, Runnable whenIdle) throws IOException {
+        long pollMillis = 1;
+        while (!stopRequested) {
+            if (reader == null) {
+                if (!open()) {
+                    sleep(MAX_POLL_MILLIS);
+                    continue;
+                }
+            }
+            if (reader.nextBuffered(line)) {
+                unflushed = true;
+                return true;
+            }
+
+            // A read from a pipe waits until something is written to it, so there
+            // is no telling if more is coming before the read
+            if (pipe) {
+                idle(whenIdle);
+                try {
+                    reader.readMore();
+                } catch (ClosedChannelException cce) {
+                    if (stopRequested) {
+                        return false;
+                    }
+                    throw cce;
+                }
+                continue;
+            }
+
+            if (reader.readMore() > 0) {
+                pollMillis = 1;
+                continue;
+            }
+            idle(whenIdle);
+            if (replaced()) {
+                ResultSink.println("The transfile " + path + " was rotated or truncated, reading it from the start");
+                closeQuietly();
+                reader = null;
+                continue;
+            }
+            sleep(pollMillis);
+            pollMillis = Math.min(pollMillis * 2, MAX_POLL_MILLIS);
+        }
+        return false;
+    }
+
+    // Helper to run whenIdle if any line was handed out since it last ran
+    private void idle(Runnable whenIdle) {
+        if (unflushed) {
+            unflushed = false;
+            whenIdle.run();
+        }
+    }
+
+    // Helper to open the file, returning false if it does not exist yet
+    private boolean open() throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException nsfe) {
+            return false;
+        }
+        pipe = attributes.isOther();
+        fileKey = attributes.fileKey();
+        FileChannel channel = pipe
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+        reader = new TransfileReader(channel, TransfileReader.DEFAULT_BUFFER_SIZE);
+        if (!pipe && startOffset > 0 && startOffset <= attributes.size()) {
+            reader.seek(startOffset, linesBefore);
+        }
+        // The saved position only applies to the file that was there at the start
+        startOffset = 0;
+        linesBefore = 0;
+        return true;
+    }
+
+    // Helper to check if the path now names a different file, or if the file got
+    // shorter than what was already read from it
+    private boolean replaced() throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException nsfe) {
+            // Moved away but not replaced yet, keep reading the old file until it is
+            return false;
+        }
+        if (fileKey != null && !fileKey.equals(attributes.fileKey())) {
+            return true;
+        }
+        return attributes.size() < reader.bytesRead();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            stopRequested = true;
+        }
+    }
+
+    private synchronized void closeQuietly() {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (IOException ioe) {
+            System.out.println("Exception: " + ioe);
+        }
+    }
+
+    @Override
+    public void close() {
+        closeQuietly();
+        if (current == this) {
+            current = null;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+// One line of the transfile, split into its space separated fields
+// The line is a slice of the bytes read by a TransfileReader, and the fields are
+// kept as offsets into those bytes, so reading a line allocates nothing. A field
+// only becomes a String when a handler asks for it. The same TransfileLine is
+// reused for every line read, so use copy to keep a line beyond the next read
+// Fields follow the rules of String.split(" "): every single space separates two
+// fields (so two spaces in a row make an empty field), and empty fields at the
+// end of the line are dropped. That keeps the argument counts, and so the
+// validation messages, exactly the same as splitting the line
+public class TransfileLine {
+
+    private final Charset charset;
+    private byte[] bytes;
+    private int start;
+    private int end;
+
+    // Offsets of each field, from fieldStarts[i] up to (not including) fieldEnds[i]
+    private int[] fieldStarts = new int[8];
+    private int[] fieldEnds = new int[8];
+    private int fieldCount;
+
+    // Position of the line in its file, counted from 1, or 0 if it has none
+    private long number;
+    // Byte offsets in the file of the start of the line, and of the line after it
+    private long offset;
+    private long nextOffset;
+
+    public TransfileLine() {
+        this(Charset.defaultCharset());
+    }
+
+    public TransfileLine(Charset charset) {
+        this.charset = charset;
+    }
+
+    // Makes a line from text that did not come from a TransfileReader
+    public static TransfileLine of(String text) {
+        TransfileLine line = new TransfileLine();
+        byte[] encoded = text.getBytes(line.charset);
+        line.set(encoded, 0, encoded.length);
+        return line;
+    }
+
+    // Points this line at bytes[start, end) and finds its fields
+    // The bytes must not include the line separator
+    void set(byte[] bytes, int start, int end) {
+        this.bytes = bytes;
+        this.start = start;
+        this.end = end;
+
+        fieldCount = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || bytes[i] == ' ') {
+                addField(fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        // Drop empty fields at the end of the line, as split does
+        // A line without any space (even an empty one) stays a single field
+        while (fieldCount > 1 && fieldStarts[fieldCount - 1] == fieldEnds[fieldCount - 1]) {
+            fieldCount--;
+        }
+        if (fieldCount == 1 && end - start > 0 && fieldStarts[0] == fieldEnds[0]) {
+            fieldCount = 0;
+        }
+    }
+
+    void setPosition(long number, long offset, long nextOffset) {
+        this.number = number;
+        this.offset = offset;
+        this.nextOffset = nextOffset;
+    }
+
+    // The line number in the transfile, counted from 1, or 0 for a line made with of
+    public long number() {
+        return number;
+    }
+
+    // Byte offset in the transfile where the line starts
+    public long offset() {
+        return offset;
+    }
+
+    // Byte offset in the transfile where the next line starts, after the separator
+    public long nextOffset() {
+        return nextOffset;
+    }
+
+    // Number of bytes in the line, 0 for a blank line
+    public int length() {
+        return end - start;
+    }
+
+    // The first character of the line, which should be the transaction code
+    // Only decoded if it is not a plain ASCII character
+    public char firstChar() {
+        byte first = bytes[start];
+        if (first >= 0) {
+            return (char) first;
+        }
+        return new String(bytes, start, Math.min(4, end - start), charset).charAt(0);
+    }
+
+    // Number of space separated fields, the same as split(" ").length
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    // The field at index (0 is the transaction code), decoded into a new String
+    public String field(int index) {
+        if (index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " of a line with " + fieldCount + " fields");
+        }
+        return new String(bytes, fieldStarts[index], fieldEnds[index] - fieldStarts[index], charset);
+    }
+
+    // A copy of this line that no longer shares bytes with the reader
+    public TransfileLine copy() {
+        TransfileLine copy = new TransfileLine(charset);
+        copy.set(Arrays.copyOfRange(bytes, start, end), 0, end - start);
+        copy.setPosition(number, offset, nextOffset);
+        return copy;
+    }
+
+    // The whole line as text
+    @Override
+    public String toString() {
+        return new String(bytes, start, end - start, charset);
+    }
+
+    // Helper to record one more field, growing the offset arrays if needed
+    private void addField(int fieldStart, int fieldEnd) {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = fieldStart;
+        fieldEnds[fieldCount] = fieldEnd;
+        fieldCount++;
+    }
+}
@@ -0,0 +1,19 @@
+// Something that processes the lines of a transfile, one after the other
+// main hands every line read from the transfile to process, in file order,
+// and calls finish once there are no more lines. The output of every line
+// must be printed in file order by the time finish returns
+// The line passed to process is reused for the next line of the transfile, so
+// a processor that keeps a line until later must keep a copy of it
+public interface TransfileProcessor {
+
+    // Processes (or queues for processing) the next line of the transfile
+    void process(TransfileLine line);
+
+    // Applies and commits every line given so far that is being held back, such as
+    // a partly filled batch. Called by --follow whenever the transfile goes idle, so
+    // that lines are applied as they arrive rather than once the batch fills up
+    void flush();
+
+    // Completes every line still in progress, and prints any remaining output
+    void finish();
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Reads the transfile one line at a time through a single reusable buffer
+// Lines end with \n, \r\n or \r, the same separators Scanner.nextLine accepts for
+// a transfile, and a last line without a separator is still read. Each line is
+// handed out as a TransfileLine that points into the buffer, so no String or
+// array is created per line. Lines longer than the buffer make it grow
+public class TransfileReader implements AutoCloseable {
+
+    static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+    // The unread bytes are buffer[pos, limit)
+    private int pos = 0;
+    private int limit = 0;
+    // Where to continue looking for the end of the current line
+    private int scanFrom = 0;
+    private boolean endOfFile = false;
+    // Number of lines read so far
+    private long lineNumber = 0;
+    // Byte offset in the file of buffer[0]
+    private long bufferStart = 0;
+
+    public TransfileReader(String fileName) throws IOException {
+        this(Paths.get(fileName), DEFAULT_BUFFER_SIZE);
+    }
+
+    public TransfileReader(Path path, int bufferSize) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.READ), bufferSize);
+    }
+
+    // Reads from a channel that is already open, which is closed along with the reader
+    public TransfileReader(FileChannel channel, int bufferSize) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    // Reads the next line into line, returning false once there are no more lines
+    public boolean next(TransfileLine line) throws IOException {
+        while (true) {
+            if (nextBuffered(line)) {
+                return true;
+            }
+            if (endOfFile) {
+                if (pos < limit) {
+                    line.set(buffer.array(), pos, limit);
+                    line.setPosition(++lineNumber, bufferStart + pos, bufferStart + limit);
+                    pos = limit;
+                    scanFrom = limit;
+                    return true;
+                }
+                return false;
+            }
+            fill();
+        }
+    }
+
+    // Reads the next line into line only if all of it, up to its separator, has
+    // already been read into the buffer. Returns false without reading the file
+    // otherwise, so a line still being written is never handed out part way
+    public boolean nextBuffered(TransfileLine line) {
+        byte[] bytes = buffer.array();
+        int i = scanFrom;
+        for (; i < limit; i++) {
+            byte b = bytes[i];
+            if (b != '\n' && b != '\r') {
+                continue;
+            }
+            // A \r at the end of the buffer may be the start of a \r\n, so
+            // read more before deciding where the line ends
+            if (b == '\r' && i + 1 == limit && !endOfFile) {
+                break;
+            }
+            line.set(bytes, pos, i);
+            long lineStart = bufferStart + pos;
+            pos = i + 1;
+            if (b == '\r' && pos < limit && bytes[pos] == '\n') {
+                pos++;
+            }
+            line.setPosition(++lineNumber, lineStart, bufferStart + pos);
+            scanFrom = pos;
+            return true;
+        }
+        scanFrom = i;
+        return false;
+    }
+
+    // Reads whatever has been added to the file into the buffer, even after the end
+    // of the file was reached before. Returns the number of bytes read, which is 0
+    // or -1 if nothing has been added
+    public int readMore() throws IOException {
+        endOfFile = false;
+        int unread = limit - pos;
+        fill();
+        return endOfFile ? -1 : limit - pos - unread;
+    }
+
+    // Number of bytes read from the file so far
+    public long bytesRead() {
+        return bufferStart + limit;
+    }
+
+    // Helper to move the unread bytes to the front of the buffer and read more after
+    // them, growing the buffer if a single line fills all of it
+    private void fill() throws IOException {
+        byte[] bytes = buffer.array();
+        int unread = limit - pos;
+        if (pos == 0 && limit == bytes.length) {
+            ByteBuffer larger = ByteBuffer.allocate(bytes.length * 2);
+            larger.put(bytes, 0, limit);
+            buffer = larger;
+        } else {
+            System.arraycopy(bytes, pos, bytes, 0, unread);
+            buffer.position(unread);
+            bufferStart += pos;
+        }
+        scanFrom -= pos;
+        pos = 0;
+        buffer.limit(buffer.capacity());
+
+        int read = channel.read(buffer);
+        if (read < 0) {
+            endOfFile = true;
+        }
+        limit = buffer.position();
+    }
+
+    // Continues reading from the line that starts at byte offset of the file, which
+    // is counted as line linesBefore + 1
+    public void seek(long offset, long linesBefore) throws IOException {
+        channel.position(offset);
+        buffer.clear();
+        pos = 0;
+        limit = 0;
+        scanFrom = 0;
+        endOfFile = false;
+        bufferStart = offset;
+        lineNumber = linesBefore;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
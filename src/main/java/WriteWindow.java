@@ -0,0 +1,303 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+
+// Holds back the last size lines of the transfile before they reach the
+// SequentialTransfileProcessor, for --write-window, and collapses the writes among
+// them that cancel out or are replaced by a later line:
+//  - a code 2 line followed by a code 1 line of the same ename, for a name that did
+//    not exist yet, adds and removes the employee, so neither is run
+//  - a code 4 line followed by another code 4 line of the same dept_name, for a
+//    department that already existed, is replaced by the later line, so only that
+//    one is run
+// Each collapsed line still reports exactly what it would have if it had been run,
+// in file order, so the output is the same as running every line. That needs the
+// outcome of the line to be known, so a pair is only collapsed once a lookup (or an
+// earlier collapse) shows the names involved exist or not as required, and no line
+// in between mentions any of those names. Codes 5 and 6 read the tables as they are,
+// so every line held back is run before them, and no pair spans a read
+public class WriteWindow implements TransfileProcessor {
+
+    // A line held back in the window
+    private static class Pending {
+        final TransfileLine line;
+        // The code of the line if it is a valid code 1-4 line, otherwise 0
+        final int code;
+        // The case folded names the line refers to, ename or dept_name first
+        final String[] names;
+        // What the line reports, if it was collapsed and will not be run
+        LineResult result;
+        // Whether this code 4 line is known to replace a department that exists,
+        // with a manager that exists
+        boolean verified;
+
+        Pending(TransfileLine line, int code, String[] names) {
+            this.line = line;
+            this.code = code;
+            this.names = names;
+        }
+
+        boolean mentions(String name) {
+            for (String mentioned : names) {
+                if (mentioned.equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Longest value the varchar(25) columns of the tables can hold
+    private static final int MAX_COLUMN_LENGTH = 25;
+
+    private final Connection conn;
+    private final SequentialTransfileProcessor processor;
+    private final int size;
+    // Whether the processor holds code 2 lines back in a batch or bulk load
+    private final boolean holdsInserts;
+    private final ArrayDeque<Pending> window = new ArrayDeque<>();
+    // enames of code 2 lines handed to the processor that may still be waiting in
+    // its batch, so are not in the table yet
+    private final Set<String> heldInserts = new HashSet<>();
+
+    private long cancelledPairs = 0;
+    private long supersededDepartments = 0;
+
+    public WriteWindow(Connection conn, SequentialTransfileProcessor processor, int size, boolean holdsInserts) {
+        this.conn = conn;
+        this.processor = processor;
+        this.size = size;
+        this.holdsInserts = holdsInserts;
+    }
+
+    @Override
+    public void process(TransfileLine line) {
+        // A read sees every line before it applied
+        if (line.length() > 0 && (line.firstChar() == '5' || line.firstChar() == '6')) {
+            drain();
+            processor.process(line);
+            return;
+        }
+
+        Pending next = pending(line.copy());
+        if (next.code == 1) {
+            cancelInsert(next);
+        } else if (next.code == 4) {
+            supersedeDepartment(next);
+        }
+        window.addLast(next);
+        if (window.size() > size) {
+            release(window.removeFirst());
+        }
+    }
+
+    @Override
+    public void flush() {
+        drain();
+        processor.flush();
+    }
+
+    @Override
+    public void finish() {
+        drain();
+        processor.finish();
+        if (cancelledPairs > 0 || supersededDepartments > 0) {
+            ResultSink.println("Write window: " + cancelledPairs + " employee inserts cancelled by a later delete, "
+                    + supersededDepartments + " department inserts replaced by a later one");
+        }
+    }
+
+    // Helper for a code 1 line, that looks back for the code 2 line that inserted the
+    // same employee, and collapses both if the employee did not exist before it
+    private void cancelInsert(Pending delete) {
+        String ename = delete.names[0];
+        Pending insert = null;
+        Iterator<Pending> back = window.descendingIterator();
+        while (back.hasNext()) {
+            Pending earlier = back.next();
+            if (earlier.result == null && earlier.code == 2 && earlier.names[0].equals(ename)) {
+                insert = earlier;
+                break;
+            }
+            if (earlier.mentions(ename)) {
+                return;
+            }
+        }
+        if (insert == null || !fits(insert.line)) {
+            return;
+        }
+        // The employee must not exist before the insert, so it is added, and so has
+        // no departments the delete would have to take it off
+        Boolean existed = employeeExistsBefore(insert, ename);
+        if (existed == null || existed) {
+            return;
+        }
+
+        TransfileLine insertLine = insert.line;
+        insert.result = resolved(insertLine, 2, "Added Employee: " + insertLine.field(1) + " "
+                + insertLine.field(2) + " " + insertLine.field(3) + " " + insertLine.field(4));
+        delete.result = resolved(delete.line, 1, "Deleted Employee: " + delete.line.field(1));
+        cancelledPairs++;
+    }
+
+    // Helper for a code 4 line, that looks back for an earlier code 4 line of the same
+    // department, and collapses the earlier one if both replace an existing department
+    private void supersedeDepartment(Pending replacement) {
+        String dept_name = replacement.names[0];
+        String mname = replacement.names[1];
+        Pending replaced = null;
+        List<Pending> between = new ArrayList<>();
+        Iterator<Pending> back = window.descendingIterator();
+        while (back.hasNext()) {
+            Pending earlier = back.next();
+            if (earlier.code == 4 && earlier.names[0].equals(dept_name)) {
+                replaced = earlier;
+                break;
+            }
+            between.add(earlier);
+        }
+        if (replaced == null || replaced.result != null) {
+            return;
+        }
+        String replacedManager = replaced.names[1];
+        for (Pending line : between) {
+            if (line.mentions(dept_name) || line.mentions(mname) || line.mentions(replacedManager)) {
+                return;
+            }
+        }
+
+        // The earlier line must add its department over an existing one, and the later
+        // line must succeed, so that the later line reports the same either way
+        if (!replaced.verified) {
+            Boolean existed = departmentExistsBefore(replaced, dept_name);
+            if (existed == null || !existed) {
+                return;
+            }
+            Boolean managerExisted = employeeExistsBefore(replaced, replacedManager);
+            if (managerExisted == null || !managerExisted) {
+                return;
+            }
+        }
+        Boolean managerExists = employeeExistsBefore(replaced, mname);
+        if (managerExists == null || !managerExists) {
+            return;
+        }
+
+        TransfileLine replacedLine = replaced.line;
+        replaced.result = resolved(replacedLine, 4,
+                "Department already exists, deleting: " + replacedLine.field(1),
+                "Added department: " + replacedLine.field(1) + " " + replacedLine.field(2));
+        replacement.verified = true;
+        supersededDepartments++;
+    }
+
+    // Helper to check if an employee exists just before the given line in the window
+    // Only answered if no line still held back before it inserts or deletes the
+    // employee, otherwise (or if the lookup fails) returns null
+    private Boolean employeeExistsBefore(Pending line, String ename) {
+        if (heldInserts.contains(ename)) {
+            return null;
+        }
+        for (Pending earlier : window) {
+            if (earlier == line) {
+                break;
+            }
+            if (earlier.result == null && (earlier.code == 1 || earlier.code == 2)
+                    && earlier.names[0].equals(ename)) {
+                return null;
+            }
+        }
+        try {
+            return JDBCProject.employeeExists(conn, ename);
+        } catch (SQLException sqle) {
+            return null;
+        }
+    }
+
+    // Helper to check if a department exists just before the given line in the window
+    private Boolean departmentExistsBefore(Pending line, String dept_name) {
+        for (Pending earlier : window) {
+            if (earlier == line) {
+                break;
+            }
+            if (earlier.result == null && (earlier.code == 3 || earlier.code == 4)
+                    && earlier.names[0].equals(dept_name)) {
+                return null;
+            }
+        }
+        try {
+            return JDBCProject.departmentExists(conn, dept_name);
+        } catch (SQLException sqle) {
+            return null;
+        }
+    }
+
+    // Helper to hand the oldest line of the window on, to be run, or to report what
+    // it was worked out to report if it was collapsed
+    private void release(Pending line) {
+        if (line.result != null) {
+            processor.processResolved(line.line, line.result);
+            if (Metrics.isEnabled()) {
+                Metrics.lineFinished(line.code, 0);
+            }
+            heldInserts.clear();
+        } else if (holdsInserts && line.line.length() > 0 && line.line.firstChar() == '2') {
+            if (line.code == 2) {
+                heldInserts.add(line.names[0]);
+            }
+            processor.process(line.line);
+        } else {
+            // Any other line makes the processor apply what it was holding back
+            heldInserts.clear();
+            processor.process(line.line);
+        }
+    }
+
+    private void drain() {
+        while (!window.isEmpty()) {
+            release(window.removeFirst());
+        }
+    }
+
+    // Helper to parse a line into what the window needs to know about it
+    private static Pending pending(TransfileLine line) {
+        int code = 0;
+        if (line.length() > 0) {
+            char transCodeChar = line.firstChar();
+            if (transCodeChar >= '1' && transCodeChar <= '4'
+                    && LineValidator.argumentProblem(line, transCodeChar - '0') == null) {
+                code = transCodeChar - '0';
+            }
+        }
+        String[] names;
+        if (code == 1 || code == 3) {
+            names = new String[] { Collation.fold(line.field(1)) };
+        } else if (code == 2 || code == 4) {
+            names = new String[] { Collation.fold(line.field(1)), Collation.fold(line.field(2)) };
+        } else {
+            names = new String[0];
+        }
+        return new Pending(line, code, names);
+    }
+
+    // Helper to check if every value of a code 2 line fits its column, so the insert
+    // cannot fail on its length
+    private static boolean fits(TransfileLine line) {
+        for (int field = 1; field <= 4; field++) {
+            String value = line.field(field);
+            if (value.codePointCount(0, value.length()) > MAX_COLUMN_LENGTH) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Helper to build the result of a collapsed line, as the handler would have reported it
+    private static LineResult resolved(TransfileLine line, int code, String... messages) {
+        ResultSink.begin(line.number());
+        for (String message : messages) {
+            ResultSink.println(message);
+        }
+        return ResultSink.end(code);
+    }
+}